@@ -0,0 +1,69 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import wordgraph.bench.GraphOps;
+
+// GraphOps on top of WordGraph, loaded by name from the benchmark package
+public class WordGraphOps implements GraphOps {
+    private final WordGraph wordGraph = new WordGraph();
+
+    @Override
+    public GraphOps newGraph() {
+        return new WordGraphOps();
+    }
+
+    @Override
+    public void buildGraph(String text) {
+        wordGraph.buildGraph(text);
+        wordGraph.getGraph();
+    }
+
+    @Override
+    public void buildGraphFromFile(String filePath) throws IOException {
+        wordGraph.buildGraphFromFileParallel(filePath, ForkJoinPool.commonPool());
+        wordGraph.getGraph();
+    }
+
+    @Override
+    public String queryBridgeWords(String word1, String word2) {
+        return wordGraph.queryBridgeWords(word1, word2);
+    }
+
+    @Override
+    public String generateNewText(String inputText, long seed) {
+        return wordGraph.generateNewText(inputText, new SplittableRandom(seed));
+    }
+
+    @Override
+    public String calcShortestPath(String word1, String word2) {
+        return wordGraph.calcShortestPath(word1, word2);
+    }
+
+    @Override
+    public void printShortestDistancesFromWord(String word) {
+        wordGraph.printShortestDistancesFromWord(word);
+    }
+
+    @Override
+    public String randomWalk(long seed) {
+        return wordGraph.randomWalk(new SplittableRandom(seed));
+    }
+
+    @Override
+    public void writeDot(int maxNodes, int maxEdges, Writer out) throws IOException {
+        Graphviz.writeDot(Subgraph.fitting(wordGraph.getGraph(), maxNodes, maxEdges), null, out);
+    }
+
+    @Override
+    public void clearCaches() {
+        wordGraph.getShortestPathTreeCache().clear();
+        wordGraph.getQueryResultCache().clear();
+    }
+
+    @Override
+    public int nodeCount() {
+        return wordGraph.getGraph().nodeCount();
+    }
+}
@@ -0,0 +1,48 @@
+package wordgraph.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Graph construction from the in-memory text and from the corpus file
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BuildBenchmark {
+    private GraphOps ops;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp(CorpusState corpus) {
+        ops = GraphOps.load();
+        text = corpus.words <= CorpusState.MAX_IN_MEMORY_WORDS ? corpus.text() : null;
+    }
+
+    @Benchmark
+    public GraphOps buildGraph(CorpusState corpus) {
+        GraphOps graph = ops.newGraph();
+        graph.buildGraph(text != null ? text : corpus.text());
+        return graph;
+    }
+
+    @Benchmark
+    public GraphOps buildGraphFromFile(CorpusState corpus) throws IOException {
+        GraphOps graph = ops.newGraph();
+        graph.buildGraphFromFile(corpus.file.toString());
+        return graph;
+    }
+}
@@ -0,0 +1,48 @@
+package wordgraph.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Corpus shared by the benchmarks of one run. Override the parameters on the command line,
+// e.g. -p words=10000,1000000,100000000 -p vocabulary=50000. Corpus files are generated once
+// and reused from the directory named by -Dwordgraph.corpusDir (default target/corpus).
+@State(Scope.Benchmark)
+public class CorpusState {
+    // Largest corpus that is also held in memory as a single string
+    static final long MAX_IN_MEMORY_WORDS = 10_000_000;
+
+    @Param("10000")
+    public long words;
+
+    @Param("20000")
+    public int vocabulary;
+
+    @Param("1.0")
+    public double exponent;
+
+    @Param("42")
+    public long seed;
+
+    ZipfCorpus corpus;
+    Path file;
+
+    @Setup
+    public void generate() throws IOException {
+        corpus = new ZipfCorpus(vocabulary, exponent, seed);
+        Path directory = Paths.get(System.getProperty("wordgraph.corpusDir", "target/corpus"));
+        file = corpus.writeFile(words, directory.resolve(corpus.fileName(words)));
+    }
+
+    String text() {
+        if (words > MAX_IN_MEMORY_WORDS) {
+            throw new IllegalStateException("Corpus of " + words + " words is too large to hold as a string; use the file benchmarks");
+        }
+        return corpus.text((int) words);
+    }
+}
@@ -0,0 +1,42 @@
+package wordgraph.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// The word-graph operations under benchmark. The application lives in the default package,
+// which classes in a named package (as JMH requires) cannot refer to, so the benchmarks go
+// through this interface; WordGraphOps in the default package implements it.
+public interface GraphOps {
+    // A fresh, empty graph
+    GraphOps newGraph();
+
+    void buildGraph(String text);
+
+    void buildGraphFromFile(String filePath) throws IOException;
+
+    String queryBridgeWords(String word1, String word2);
+
+    String generateNewText(String inputText, long seed);
+
+    String calcShortestPath(String word1, String word2);
+
+    void printShortestDistancesFromWord(String word);
+
+    String randomWalk(long seed);
+
+    // Writes DOT for at most maxNodes nodes and maxEdges edges of the graph
+    void writeDot(int maxNodes, int maxEdges, Writer out) throws IOException;
+
+    // Drops cached shortest-path trees and the like, so that queries start cold
+    void clearCaches();
+
+    int nodeCount();
+
+    static GraphOps load() {
+        try {
+            return (GraphOps) Class.forName("WordGraphOps").getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("WordGraphOps is not on the class path", e);
+        }
+    }
+}
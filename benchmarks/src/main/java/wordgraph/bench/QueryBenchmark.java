@@ -0,0 +1,162 @@
+package wordgraph.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Queries on a graph built once per trial from the corpus file. Query words are drawn from the
+// same Zipf distribution as the corpus (with their own seed), so frequent words are asked
+// about more often, as in real use. Shortest-path trees are cached by WordGraph; the cache is
+// cleared before every iteration so each iteration starts cold. The cache of finished answers
+// is turned off in the forked JVM: the 1024 query pairs repeat within an iteration, and with
+// the cache on every benchmark after the first pass would only measure hash lookups.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dwordgraph.resultCacheEntries=0")
+public class QueryBenchmark {
+    private static final int QUERIES = 1024;
+
+    private GraphOps graph;
+    private final String[] firstWords = new String[QUERIES];
+    private final String[] secondWords = new String[QUERIES];
+    private final String[] lines = new String[QUERIES];
+    private int next;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp(CorpusState corpus) throws IOException {
+        graph = GraphOps.load().newGraph();
+        graph.buildGraphFromFile(corpus.file.toString());
+        SplittableRandom random = new SplittableRandom(corpus.seed + 1);
+        for (int i = 0; i < QUERIES; i++) {
+            firstWords[i] = corpus.corpus.sampleWord(random);
+            secondWords[i] = corpus.corpus.sampleWord(random);
+            StringBuilder line = new StringBuilder();
+            for (int w = 0; w < ZipfCorpus.DEFAULT_WORDS_PER_LINE; w++) {
+                line.append(w == 0 ? "" : " ").append(corpus.corpus.sampleWord(random));
+            }
+            lines[i] = line.toString();
+        }
+        // printShortestDistancesFromWord reports on stdout
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Setup(Level.Iteration)
+    public void coldCaches() {
+        graph.clearCaches();
+    }
+
+    private int nextQuery() {
+        int query = next;
+        next = (next + 1) & (QUERIES - 1);
+        return query;
+    }
+
+    @Benchmark
+    public String queryBridgeWords() {
+        int query = nextQuery();
+        return graph.queryBridgeWords(firstWords[query], secondWords[query]);
+    }
+
+    @Benchmark
+    public String generateNewText() {
+        int query = nextQuery();
+        return graph.generateNewText(lines[query], query);
+    }
+
+    @Benchmark
+    public String calcShortestPath() {
+        int query = nextQuery();
+        return graph.calcShortestPath(firstWords[query], secondWords[query]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void printShortestDistancesFromWord() {
+        graph.printShortestDistancesFromWord(firstWords[nextQuery()]);
+    }
+
+    @Benchmark
+    public String randomWalk() {
+        return graph.randomWalk(nextQuery());
+    }
+
+    // DOT for the default visualisation budget (see Graphviz.DEFAULT_MAX_NODES)
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long writeDot() throws IOException {
+        CountingWriter out = new CountingWriter();
+        graph.writeDot(300, 1000, out);
+        return out.chars;
+    }
+
+    // DOT for the whole graph
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long writeDotFullGraph() throws IOException {
+        CountingWriter out = new CountingWriter();
+        graph.writeDot(Integer.MAX_VALUE, Integer.MAX_VALUE, out);
+        return out.chars;
+    }
+
+    // Discards DOT output, counting it so that the work cannot be optimised away
+    private static class CountingWriter extends Writer {
+        long chars;
+
+        @Override
+        public void write(int c) {
+            chars++;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            chars += len;
+        }
+
+        @Override
+        public void write(char[] buffer, int off, int len) {
+            chars += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
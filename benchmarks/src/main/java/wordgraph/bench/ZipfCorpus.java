@@ -0,0 +1,175 @@
+package wordgraph.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Deterministic synthetic corpus: words drawn from a Zipf distribution over a fixed vocabulary,
+// so that word frequencies (and with them node degrees and edge weights) look like real text.
+// The same (vocabulary, exponent, seed, word count) always produces the same text, which makes
+// benchmark runs reproducible offline. Word of rank r is the bijective base-26 spelling of r + 1
+// ("a", "b", ..., "z", "aa", ...), so frequent words are short and all survive the corpus reader's
+// letters-only normalisation unchanged.
+//
+// Usage: java -cp benchmarks.jar wordgraph.bench.ZipfCorpus [--vocabulary N] [--words N]
+//        [--exponent S] [--seed N] [--words-per-line N] --out FILE
+public class ZipfCorpus {
+    public static final int DEFAULT_WORDS_PER_LINE = 16;
+
+    private final int vocabularySize;
+    private final double exponent;
+    private final long seed;
+    // cumulative[r] = P(rank <= r)
+    private final double[] cumulative;
+    private final String[] words;
+
+    public ZipfCorpus(int vocabularySize, double exponent, long seed) {
+        if (vocabularySize < 1) {
+            throw new IllegalArgumentException("Vocabulary must hold at least one word");
+        }
+        this.vocabularySize = vocabularySize;
+        this.exponent = exponent;
+        this.seed = seed;
+        this.cumulative = new double[vocabularySize];
+        this.words = new String[vocabularySize];
+        double total = 0;
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            total += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+            words[rank] = spell(rank);
+        }
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            cumulative[rank] /= total;
+        }
+        cumulative[vocabularySize - 1] = 1.0;
+    }
+
+    public int vocabularySize() {
+        return vocabularySize;
+    }
+
+    public double exponent() {
+        return exponent;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    public String word(int rank) {
+        return words[rank];
+    }
+
+    // Draws a rank, 0 being the most frequent word
+    public int sampleRank(SplittableRandom random) {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        return rank >= 0 ? rank : Math.min(-rank - 1, vocabularySize - 1);
+    }
+
+    public String sampleWord(SplittableRandom random) {
+        return words[sampleRank(random)];
+    }
+
+    // Writes wordCount words, wordsPerLine to a line
+    public void write(long wordCount, int wordsPerLine, Writer out) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (long i = 0; i < wordCount; i++) {
+            out.write(sampleWord(random));
+            out.write((i + 1) % wordsPerLine == 0 || i + 1 == wordCount ? '\n' : ' ');
+        }
+    }
+
+    // The corpus as one string; meant for sizes that comfortably fit in memory
+    public String text(int wordCount) {
+        StringBuilder text = new StringBuilder(wordCount * 6);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < wordCount; i++) {
+            text.append(sampleWord(random));
+            text.append((i + 1) % DEFAULT_WORDS_PER_LINE == 0 || i + 1 == wordCount ? '\n' : ' ');
+        }
+        return text.toString();
+    }
+
+    // Writes the corpus to file unless a file of that name already exists, and returns it.
+    // Callers put the parameters into the name, see fileName.
+    public Path writeFile(long wordCount, Path file) throws IOException {
+        if (Files.exists(file)) {
+            return file;
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8), 1 << 20)) {
+            write(wordCount, DEFAULT_WORDS_PER_LINE, out);
+        }
+        Files.move(temp, file);
+        return file;
+    }
+
+    // File name that identifies this corpus and word count
+    public String fileName(long wordCount) {
+        return "zipf-v" + vocabularySize + "-s" + exponent + "-seed" + seed + "-w" + wordCount + ".txt";
+    }
+
+    // Bijective base 26: 0 -> "a", 25 -> "z", 26 -> "aa", ...
+    static String spell(int rank) {
+        StringBuilder word = new StringBuilder(4);
+        long n = rank + 1L;
+        while (n > 0) {
+            n--;
+            word.append((char) ('a' + n % 26));
+            n /= 26;
+        }
+        return word.reverse().toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int vocabulary = 50_000;
+        long wordCount = 1_000_000;
+        double exponent = 1.0;
+        long seed = 42;
+        int wordsPerLine = DEFAULT_WORDS_PER_LINE;
+        String out = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--vocabulary":
+                    vocabulary = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--words":
+                    wordCount = Long.parseLong(args[i + 1]);
+                    break;
+                case "--exponent":
+                    exponent = Double.parseDouble(args[i + 1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                case "--words-per-line":
+                    wordsPerLine = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--out":
+                    out = args[i + 1];
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (out == null) {
+            System.err.println("Usage: ZipfCorpus [--vocabulary N] [--words N] [--exponent S] [--seed N] [--words-per-line N] --out FILE");
+            System.exit(2);
+        }
+        ZipfCorpus corpus = new ZipfCorpus(vocabulary, exponent, seed);
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8), 1 << 20)) {
+            corpus.write(wordCount, wordsPerLine, writer);
+        }
+    }
+}
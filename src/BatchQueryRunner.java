@@ -0,0 +1,153 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// Runs a file of queries against a WordGraph and writes one result line per query line, in
+// input order; a line whose query fails gets an error line. Modes:
+//
+//     bridge   "WORD1 WORD2" per line -> queryBridgeWords
+//     path     "WORD1 WORD2" per line -> calcShortestPath, its lines joined with " | "
+//     text     a sentence per line    -> generateNewText, reproducible for a given seed
+//
+// The input is read in chunks of CHUNK_LINES; a chunk is answered on the work-stealing pool
+// while the previous chunk's results are written, so at most two chunks are held in memory
+// however long the file is. Progress goes to the progress stream every PROGRESS_NANOS.
+public class BatchQueryRunner {
+    static final int CHUNK_LINES = 4096;
+    private static final long PROGRESS_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final WordGraph wordGraph;
+    private final String mode;
+    private final ForkJoinPool pool;
+    private final PrintStream progress;
+    private long queries;
+    private long elapsedNanos;
+
+    public BatchQueryRunner(WordGraph wordGraph, String mode, ForkJoinPool pool, PrintStream progress) {
+        if (!mode.equals("bridge") && !mode.equals("path") && !mode.equals("text")) {
+            throw new IllegalArgumentException("Unknown batch mode " + mode + ", expected bridge, path or text");
+        }
+        this.wordGraph = wordGraph;
+        this.mode = mode;
+        this.pool = pool;
+        this.progress = progress;
+    }
+
+    // Answers every line of in; out is flushed but not closed
+    public void run(BufferedReader in, Writer out, long seed) throws IOException {
+        SplittableRandom root = new SplittableRandom(seed);
+        long start = System.nanoTime();
+        long nextReport = start + PROGRESS_NANOS;
+        queries = 0;
+        Chunk pending = null;
+        while (true) {
+            Chunk chunk = Chunk.read(in, root);
+            if (chunk.count > 0) {
+                chunk.answered = CompletableFuture.runAsync(() -> answer(chunk), pool);
+            }
+            if (pending != null) {
+                write(pending, out);
+                queries += pending.count;
+                long now = System.nanoTime();
+                if (progress != null && now >= nextReport) {
+                    progress.println(report(queries, now - start));
+                    nextReport = now + PROGRESS_NANOS;
+                }
+            }
+            if (chunk.count == 0) {
+                break;
+            }
+            pending = chunk;
+        }
+        out.flush();
+        elapsedNanos = System.nanoTime() - start;
+        if (progress != null) {
+            progress.println(report(queries, elapsedNanos) + ", done");
+        }
+    }
+
+    public long queryCount() {
+        return queries;
+    }
+
+    // Queries per second over the last run
+    public double throughput() {
+        return elapsedNanos == 0 ? 0 : queries * 1e9 / elapsedNanos;
+    }
+
+    private static String report(long queries, long nanos) {
+        return String.format("%d queries in %.1f s (%.0f queries/s)", queries, nanos / 1e9, queries * 1e9 / Math.max(1, nanos));
+    }
+
+    private void answer(Chunk chunk) {
+        IntStream.range(0, chunk.count).parallel().forEach(i -> chunk.results[i] = answerOrError(chunk.lines[i], chunk.randoms[i]));
+    }
+
+    // A query that throws gets an error line of its own instead of ending the whole batch
+    private String answerOrError(String line, SplittableRandom random) {
+        try {
+            return answer(line, random);
+        } catch (RuntimeException e) {
+            return ("Query failed (" + e + "): " + line).replace('\n', ' ');
+        }
+    }
+
+    String answer(String line, SplittableRandom random) {
+        if (mode.equals("text")) {
+            return wordGraph.generateNewText(line, random);
+        }
+        String[] words = line.trim().toLowerCase().split("\\s+");
+        if (words.length != 2) {
+            return "Expected two words: " + line;
+        }
+        if (mode.equals("bridge")) {
+            return wordGraph.queryBridgeWords(words[0], words[1]);
+        }
+        String paths = wordGraph.calcShortestPath(words[0], words[1]);
+        if (paths.endsWith("\n")) {
+            paths = paths.substring(0, paths.length() - 1);
+        }
+        return paths.replace("\n", " | ");
+    }
+
+    private static void write(Chunk chunk, Writer out) throws IOException {
+        try {
+            chunk.answered.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while answering queries", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch query failed", e.getCause());
+        }
+        for (int i = 0; i < chunk.count; i++) {
+            out.write(chunk.results[i]);
+            out.write(System.lineSeparator());
+        }
+    }
+
+    // Up to CHUNK_LINES input lines with their generators and, once answered, their results
+    private static class Chunk {
+        final String[] lines = new String[CHUNK_LINES];
+        final SplittableRandom[] randoms = new SplittableRandom[CHUNK_LINES];
+        final String[] results = new String[CHUNK_LINES];
+        int count;
+        CompletableFuture<Void> answered;
+
+        static Chunk read(BufferedReader in, SplittableRandom root) throws IOException {
+            Chunk chunk = new Chunk();
+            String line;
+            while (chunk.count < CHUNK_LINES && (line = in.readLine()) != null) {
+                chunk.randoms[chunk.count] = root.split();
+                chunk.lines[chunk.count++] = line;
+            }
+            return chunk;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.function.IntConsumer;
+
+// Receives the word ids of a text in order and counts each adjacent pair.
+// Remembers the first and last word so that neighbouring shards can be stitched together.
+public class BigramCollector implements IntConsumer {
+    private final EdgeCounter edges;
+    private int first = -1;
+    private int previous = -1;
+
+    public BigramCollector(EdgeCounter edges) {
+        this.edges = edges;
+    }
+
+    @Override
+    public void accept(int current) {
+        if (previous >= 0) {
+            edges.add(previous, current);
+        } else {
+            first = current;
+        }
+        previous = current;
+    }
+
+    public EdgeCounter edges() {
+        return edges;
+    }
+
+    // Id of the first word seen, or -1 if the text was empty
+    public int first() {
+        return first;
+    }
+
+    // Id of the last word seen, or -1 if the text was empty
+    public int last() {
+        return previous;
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Bridge words of one graph snapshot: X is a bridge from word1 to word2 when both
+// word1 -> X and X -> word2 are edges. Each query intersects the sorted out-neighbours of
+// word1 with the sorted in-neighbours of word2. Results are word ids in ascending order.
+public class BridgeWordEngine {
+    private static final int[] NONE = new int[0];
+
+    private final CsrGraph graph;
+    private final int hotWordCount;
+    // Two-hop index for the words with the most successors, built on first use
+    private volatile Map<Integer, TwoHopIndex> hotIndex;
+
+    public BridgeWordEngine(CsrGraph graph) {
+        this(graph, 0);
+    }
+
+    // hotWordCount words with the highest out-degree get a precomputed two-hop index
+    public BridgeWordEngine(CsrGraph graph, int hotWordCount) {
+        this.graph = graph;
+        this.hotWordCount = hotWordCount;
+    }
+
+    public CsrGraph graph() {
+        return graph;
+    }
+
+    public int[] bridgeIds(int source, int target) {
+        if (hotWordCount > 0) {
+            TwoHopIndex index = hotIndex().get(source);
+            if (index != null) {
+                return index.bridges(target);
+            }
+        }
+        return intersect(source, target);
+    }
+
+    public List<String> bridgeWords(int source, int target) {
+        return toWords(bridgeIds(source, target));
+    }
+
+    // Answers many pairs in one pass: pairs are grouped by source word, the successors of each
+    // source are stamped once and every target of the group only scans its own predecessors.
+    public int[][] bridgeIds(int[] sources, int[] targets) {
+        int pairCount = sources.length;
+        Integer[] order = new Integer[pairCount];
+        for (int i = 0; i < pairCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(sources[a], sources[b]));
+
+        int[][] results = new int[pairCount][];
+        int[] buffer = new int[16];
+        int currentSource = -1;
+        try (TraversalWorkspace successors = TraversalWorkspace.acquire(graph.nodeCount())) {
+            for (int i : order) {
+                int source = sources[i];
+                int target = targets[i];
+                if (source < 0 || target < 0) {
+                    results[i] = NONE;
+                    continue;
+                }
+                if (source != currentSource) {
+                    currentSource = source;
+                    successors.reset();
+                    for (int e = graph.outStart(source); e < graph.outEnd(source); e++) {
+                        successors.visit(graph.target(e));
+                    }
+                }
+                int count = 0;
+                for (int in = graph.inStart(target); in < graph.inEnd(target); in++) {
+                    int middle = graph.inSource(in);
+                    if (successors.isReached(middle)) {
+                        if (count == buffer.length) {
+                            buffer = Arrays.copyOf(buffer, count * 2);
+                        }
+                        buffer[count++] = middle;
+                    }
+                }
+                results[i] = count == 0 ? NONE : Arrays.copyOf(buffer, count);
+            }
+        }
+        return results;
+    }
+
+    public List<String> toWords(int[] ids) {
+        List<String> words = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            words.add(graph.word(id));
+        }
+        return words;
+    }
+
+    // Sorted-list intersection; when one side is much shorter its entries are binary searched
+    // in the other side instead of merging both.
+    private int[] intersect(int source, int target) {
+        int outFrom = graph.outStart(source);
+        int outTo = graph.outEnd(source);
+        int inFrom = graph.inStart(target);
+        int inTo = graph.inEnd(target);
+        int outSize = outTo - outFrom;
+        int inSize = inTo - inFrom;
+        if (outSize == 0 || inSize == 0) {
+            return NONE;
+        }
+
+        int[] found = new int[Math.min(outSize, inSize)];
+        int count = 0;
+        if (inSize * 8 < outSize) {
+            for (int in = inFrom; in < inTo; in++) {
+                int middle = graph.inSource(in);
+                if (graph.findEdge(source, middle) >= 0) {
+                    found[count++] = middle;
+                }
+            }
+        } else if (outSize * 8 < inSize) {
+            for (int e = outFrom; e < outTo; e++) {
+                int middle = graph.target(e);
+                if (graph.findEdge(middle, target) >= 0) {
+                    found[count++] = middle;
+                }
+            }
+        } else {
+            int e = outFrom;
+            int in = inFrom;
+            while (e < outTo && in < inTo) {
+                int a = graph.target(e);
+                int b = graph.inSource(in);
+                if (a < b) {
+                    e++;
+                } else if (a > b) {
+                    in++;
+                } else {
+                    found[count++] = a;
+                    e++;
+                    in++;
+                }
+            }
+        }
+        return count == 0 ? NONE : Arrays.copyOf(found, count);
+    }
+
+    private Map<Integer, TwoHopIndex> hotIndex() {
+        Map<Integer, TwoHopIndex> index = hotIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = hotIndex;
+                if (index == null) {
+                    index = buildHotIndex();
+                    hotIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private Map<Integer, TwoHopIndex> buildHotIndex() {
+        int nodeCount = graph.nodeCount();
+        Integer[] nodes = new Integer[nodeCount];
+        for (int u = 0; u < nodeCount; u++) {
+            nodes[u] = u;
+        }
+        Arrays.sort(nodes, (a, b) -> Integer.compare(graph.outDegree(b), graph.outDegree(a)));
+        Map<Integer, TwoHopIndex> index = new HashMap<>();
+        for (int i = 0; i < Math.min(hotWordCount, nodeCount); i++) {
+            index.put(nodes[i], new TwoHopIndex(graph, nodes[i]));
+        }
+        return index;
+    }
+
+    // All bridge lists of one source word, keyed by the two-hop target
+    private static class TwoHopIndex {
+        private final int[] targets;
+        private final int[] offsets;
+        private final int[] bridges;
+
+        TwoHopIndex(CsrGraph graph, int source) {
+            // Key each (target, middle) pair so one sort groups by target with middles ascending
+            int total = 0;
+            for (int e = graph.outStart(source); e < graph.outEnd(source); e++) {
+                total += graph.outDegree(graph.target(e));
+            }
+            long[] pairs = new long[total];
+            int n = 0;
+            for (int e = graph.outStart(source); e < graph.outEnd(source); e++) {
+                int middle = graph.target(e);
+                for (int f = graph.outStart(middle); f < graph.outEnd(middle); f++) {
+                    pairs[n++] = ((long) graph.target(f) << 32) | middle;
+                }
+            }
+            Arrays.sort(pairs);
+
+            int distinct = 0;
+            for (int i = 0; i < total; i++) {
+                if (i == 0 || (pairs[i] >>> 32) != (pairs[i - 1] >>> 32)) {
+                    distinct++;
+                }
+            }
+            targets = new int[distinct];
+            offsets = new int[distinct + 1];
+            bridges = new int[total];
+            int t = -1;
+            for (int i = 0; i < total; i++) {
+                if (i == 0 || (pairs[i] >>> 32) != (pairs[i - 1] >>> 32)) {
+                    t++;
+                    targets[t] = (int) (pairs[i] >>> 32);
+                    offsets[t] = i;
+                }
+                bridges[i] = (int) pairs[i];
+            }
+            offsets[distinct] = total;
+        }
+
+        int[] bridges(int target) {
+            int t = Arrays.binarySearch(targets, target);
+            return t < 0 ? NONE : Arrays.copyOfRange(bridges, offsets[t], offsets[t + 1]);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Streaming tokenizer for corpus files. The file is memory-mapped one window at a time and
+// normalised byte by byte exactly like Main.readFileContent: characters other than ASCII
+// letters and whitespace are dropped, whitespace separates words and letters are lowercased.
+// Each word is interned and its id handed to the consumer, so the text never exists as a String.
+// A reader carries tokenizer state and is meant to be used for a single file.
+public class CorpusReader {
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private final WordDictionary dictionary;
+    private final int windowSize;
+
+    // Current token, carried across window boundaries
+    private byte[] token = new byte[32];
+    private int tokenLength;
+    private int tokenHash;
+    private boolean startOfText;
+    private boolean anyToken;
+    private boolean leadingWhitespace;
+
+    // Byte-keyed index over the dictionary so repeated words are resolved without allocating
+    private int[] slotIds = emptySlots(1024);
+    private int[] slotHashes = new int[1024];
+    private int indexed;
+
+    public CorpusReader(WordDictionary dictionary) {
+        this(dictionary, DEFAULT_WINDOW_SIZE);
+    }
+
+    public CorpusReader(WordDictionary dictionary, int windowSize) {
+        this.dictionary = dictionary;
+        this.windowSize = windowSize;
+    }
+
+    // Emits the id of every word of the file, in order
+    public void read(Path path, IntConsumer words) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            readRange(channel, 0, size, true, words);
+            if (size == 0) {
+                // An empty corpus still yields the single empty word
+                emit(words);
+            }
+        }
+    }
+
+    // Emits the ids of the words in bytes [from, to) of the channel. Both ends must lie on a word
+    // boundary (whitespace byte or end of file); only a range read as the start of the text
+    // produces the leading empty word.
+    void readRange(FileChannel channel, long from, long to, boolean startOfText, IntConsumer words) throws IOException {
+        this.startOfText = startOfText;
+        for (long position = from; position < to; position += windowSize) {
+            long length = Math.min(windowSize, to - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            scan(window, words);
+        }
+        if (tokenLength > 0) {
+            emit(words);
+        }
+    }
+
+    // True when whitespace was read before the first word of the range (or anywhere, if it held no word)
+    boolean whitespaceBeforeFirstWord() {
+        return leadingWhitespace;
+    }
+
+    // True for the bytes String.split("\\s+") treats as separators
+    static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+    }
+
+    private void scan(MappedByteBuffer window, IntConsumer words) {
+        int limit = window.limit();
+        for (int i = 0; i < limit; i++) {
+            int b = window.get(i);
+            if (b >= 'A' && b <= 'Z') {
+                append((byte) (b + ('a' - 'A')));
+            } else if (b >= 'a' && b <= 'z') {
+                append((byte) b);
+            } else if (isWhitespace(b)) {
+                if (tokenLength > 0) {
+                    emit(words);
+                } else if (!anyToken) {
+                    // String.split keeps a leading empty word when the text starts with whitespace
+                    leadingWhitespace = true;
+                }
+            }
+        }
+    }
+
+    private void append(byte b) {
+        if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, tokenLength * 2);
+        }
+        token[tokenLength++] = b;
+        tokenHash = tokenHash * 31 + b;
+    }
+
+    private void emit(IntConsumer words) {
+        if (!anyToken && leadingWhitespace && startOfText) {
+            words.accept(dictionary.intern(""));
+        }
+        anyToken = true;
+        words.accept(lookup());
+        tokenLength = 0;
+        tokenHash = 0;
+    }
+
+    private int lookup() {
+        int mask = slotIds.length - 1;
+        int slot = tokenHash & mask;
+        while (slotIds[slot] >= 0) {
+            if (slotHashes[slot] == tokenHash && matches(dictionary.wordOf(slotIds[slot]))) {
+                return slotIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = dictionary.intern(new String(token, 0, tokenLength, StandardCharsets.US_ASCII));
+        slotIds[slot] = id;
+        slotHashes[slot] = tokenHash;
+        if (++indexed * 2 > slotIds.length) {
+            growIndex();
+        }
+        return id;
+    }
+
+    private boolean matches(String word) {
+        if (word.length() != tokenLength) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (word.charAt(i) != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void growIndex() {
+        int[] oldIds = slotIds;
+        int[] oldHashes = slotHashes;
+        slotIds = emptySlots(oldIds.length * 2);
+        slotHashes = new int[oldIds.length * 2];
+        int mask = slotIds.length - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] >= 0) {
+                int slot = oldHashes[i] & mask;
+                while (slotIds[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slotIds[slot] = oldIds[i];
+                slotHashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private static int[] emptySlots(int capacity) {
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        return slots;
+    }
+}
@@ -0,0 +1,328 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+// Frozen compressed-sparse-row word graph. The out-edges of node u are the edge ids
+// offsets[u] .. offsets[u + 1] - 1, sorted by target id and free of duplicates.
+// The arrays are held as IntBuffers so that a graph loaded from a snapshot file can be served
+// straight from the memory-mapped file; graphs built in memory wrap plain int[] arrays.
+public class CsrGraph {
+    private final long version;
+    private final WordDictionary dictionary;
+    private final int nodeCount;
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    private final IntBuffer weights;
+    // Reverse (in-edge) CSR, built on first use: the sources of the in-edges of node v are
+    // inSources[inOffsets[v]] .. inSources[inOffsets[v + 1] - 1], sorted by source id
+    private volatile int[] inOffsets;
+    private int[] inSources;
+    private int[] inWeights;
+    // Content hash, computed on first use; 0 means not computed yet
+    private volatile long fingerprint;
+
+    CsrGraph(long version, WordDictionary dictionary, int nodeCount, IntBuffer offsets, IntBuffer targets, IntBuffer weights) {
+        this.version = version;
+        this.dictionary = dictionary;
+        this.nodeCount = nodeCount;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    CsrGraph(long version, WordDictionary dictionary, int nodeCount, int[] offsets, int[] targets, int[] weights) {
+        this(version, dictionary, nodeCount, IntBuffer.wrap(offsets), IntBuffer.wrap(targets), IntBuffer.wrap(weights));
+    }
+
+    public static CsrGraph empty(WordDictionary dictionary) {
+        return new CsrGraph(0, dictionary, 0, new int[1], new int[0], new int[0]);
+    }
+
+    public static CsrGraph freeze(WordDictionary dictionary, EdgeCounter edges) {
+        return freeze(dictionary, edges, 0);
+    }
+
+    static CsrGraph freeze(WordDictionary dictionary, EdgeCounter edges, long version) {
+        int nodeCount = dictionary.size();
+        int[] offsets = new int[nodeCount + 1];
+        for (int slot = 0; slot < edges.capacity(); slot++) {
+            long key = edges.slotKey(slot);
+            if (key != -1L) {
+                offsets[EdgeCounter.source(key) + 1]++;
+            }
+        }
+        for (int u = 0; u < nodeCount; u++) {
+            offsets[u + 1] += offsets[u];
+        }
+
+        int[] targets = new int[offsets[nodeCount]];
+        int[] weights = new int[offsets[nodeCount]];
+        int[] next = Arrays.copyOf(offsets, nodeCount);
+        for (int slot = 0; slot < edges.capacity(); slot++) {
+            long key = edges.slotKey(slot);
+            if (key != -1L) {
+                int e = next[EdgeCounter.source(key)]++;
+                targets[e] = EdgeCounter.target(key);
+                weights[e] = edges.slotCount(slot);
+            }
+        }
+        for (int u = 0; u < nodeCount; u++) {
+            sortRow(targets, weights, offsets[u], offsets[u + 1]);
+        }
+        return new CsrGraph(version, dictionary, nodeCount, offsets, targets, weights);
+    }
+
+    // Copy-on-write update: returns a new graph holding this graph's edges plus the added bigram
+    // counts, for all words currently in the dictionary. Rows are merged in one linear pass, so
+    // the cost is O(V + E + D log D) for D added bigrams, and this graph stays valid for readers.
+    CsrGraph withEdges(WordDictionary dictionary, EdgeCounter added, long version) {
+        if (edgeCount() == 0) {
+            return freeze(dictionary, added, version);
+        }
+        long[] keys = added.sortedKeys();
+        int newNodeCount = dictionary.size();
+        int[] newOffsets = new int[newNodeCount + 1];
+        int[] newTargets = new int[edgeCount() + keys.length];
+        int[] newWeights = new int[newTargets.length];
+
+        int out = 0;
+        int k = 0;
+        for (int u = 0; u < newNodeCount; u++) {
+            newOffsets[u] = out;
+            int e = u < nodeCount ? outStart(u) : 0;
+            int end = u < nodeCount ? outEnd(u) : 0;
+            while (e < end || (k < keys.length && EdgeCounter.source(keys[k]) == u)) {
+                boolean takeOld = e < end;
+                boolean takeNew = k < keys.length && EdgeCounter.source(keys[k]) == u;
+                if (takeOld && takeNew) {
+                    int oldTarget = targets.get(e);
+                    int newTarget = EdgeCounter.target(keys[k]);
+                    takeOld = oldTarget <= newTarget;
+                    takeNew = newTarget <= oldTarget;
+                }
+                if (takeOld) {
+                    newTargets[out] = targets.get(e);
+                    newWeights[out] = weights.get(e);
+                    e++;
+                } else {
+                    newTargets[out] = EdgeCounter.target(keys[k]);
+                }
+                if (takeNew) {
+                    newWeights[out] += added.get(u, EdgeCounter.target(keys[k]));
+                    k++;
+                }
+                out++;
+            }
+        }
+        newOffsets[newNodeCount] = out;
+        if (out < newTargets.length) {
+            newTargets = Arrays.copyOf(newTargets, out);
+            newWeights = Arrays.copyOf(newWeights, out);
+        }
+        return new CsrGraph(version, dictionary, newNodeCount, newOffsets, newTargets, newWeights);
+    }
+
+    // Snapshot number, increased by one for every published change of a WordGraph
+    public long version() {
+        return version;
+    }
+
+    // Insertion sort is enough for typical rows; long rows fall back to a packed sort
+    private static void sortRow(int[] targets, int[] weights, int from, int to) {
+        if (to - from > 32) {
+            long[] packed = new long[to - from];
+            for (int e = from; e < to; e++) {
+                packed[e - from] = ((long) targets[e] << 32) | (weights[e] & 0xFFFFFFFFL);
+            }
+            Arrays.sort(packed);
+            for (int e = from; e < to; e++) {
+                targets[e] = (int) (packed[e - from] >>> 32);
+                weights[e] = (int) packed[e - from];
+            }
+            return;
+        }
+        for (int i = from + 1; i < to; i++) {
+            int t = targets[i];
+            int w = weights[i];
+            int j = i - 1;
+            while (j >= from && targets[j] > t) {
+                targets[j + 1] = targets[j];
+                weights[j + 1] = weights[j];
+                j--;
+            }
+            targets[j + 1] = t;
+            weights[j + 1] = w;
+        }
+    }
+
+    // 64-bit hash of the words, edges and weights. Two snapshots with the same content have the
+    // same fingerprint whatever their version, also across restarts. A graph mapped from a
+    // snapshot file takes its fingerprint from the file's checksum instead (see
+    // useFileChecksum), so it may differ from that of the same graph built in memory.
+    public long fingerprint() {
+        long h = fingerprint;
+        if (h == 0) {
+            h = mix(0x9E3779B97F4A7C15L, nodeCount);
+            for (int u = 0; u < nodeCount; u++) {
+                h = mix(h, word(u).hashCode());
+                h = mix(h, offsets.get(u + 1));
+            }
+            for (int e = 0; e < edgeCount(); e++) {
+                h = mix(h, targets.get(e));
+                h = mix(h, weights.get(e));
+            }
+            if (h == 0) {
+                h = 1;
+            }
+            fingerprint = h;
+        }
+        return h;
+    }
+
+    // Fingerprint from the body checksum and length of the snapshot file this graph is mapped
+    // from, plus the version; hashing every edge would read the whole file
+    void useFileChecksum(long bodyCrc, long bodyLength) {
+        long h = mix(0x7F4A7C159E3779B9L, nodeCount);
+        h = mix(h, edgeCount());
+        h = mix(h, (int) bodyCrc);
+        h = mix(h, (int) bodyLength);
+        h = mix(h, (int) (bodyLength >>> 32));
+        h = mix(h, (int) version);
+        h = mix(h, (int) (version >>> 32));
+        fingerprint = h == 0 ? 1 : h;
+    }
+
+    private static long mix(long h, int value) {
+        h ^= value * 0xC2B2AE3D27D4EB4FL;
+        return Long.rotateLeft(h, 31) * 0x9E3779B97F4A7C15L;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return offsets.get(nodeCount);
+    }
+
+    public String word(int node) {
+        return dictionary.wordOf(node);
+    }
+
+    public WordDictionary dictionary() {
+        return dictionary;
+    }
+
+    public int outStart(int node) {
+        return offsets.get(node);
+    }
+
+    public int outEnd(int node) {
+        return offsets.get(node + 1);
+    }
+
+    public int outDegree(int node) {
+        return offsets.get(node + 1) - offsets.get(node);
+    }
+
+    public int target(int edge) {
+        return targets.get(edge);
+    }
+
+    public int weight(int edge) {
+        return weights.get(edge);
+    }
+
+    // Node whose row holds the edge, found by binary search over the row offsets
+    public int source(int edge) {
+        int low = 0;
+        int high = nodeCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets.get(mid) <= edge) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    public int inStart(int node) {
+        return reverseOffsets()[node];
+    }
+
+    public int inEnd(int node) {
+        return reverseOffsets()[node + 1];
+    }
+
+    public int inDegree(int node) {
+        int[] in = reverseOffsets();
+        return in[node + 1] - in[node];
+    }
+
+    // Source node of the given in-edge slot (not an out-edge id)
+    public int inSource(int inEdge) {
+        reverseOffsets();
+        return inSources[inEdge];
+    }
+
+    // Weight of the given in-edge slot, i.e. of the edge inSource(inEdge) -> node
+    public int inWeight(int inEdge) {
+        reverseOffsets();
+        return inWeights[inEdge];
+    }
+
+    private int[] reverseOffsets() {
+        int[] in = inOffsets;
+        if (in == null) {
+            in = buildReverse();
+        }
+        return in;
+    }
+
+    private synchronized int[] buildReverse() {
+        if (inOffsets != null) {
+            return inOffsets;
+        }
+        int[] in = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount(); e++) {
+            in[targets.get(e) + 1]++;
+        }
+        for (int v = 0; v < nodeCount; v++) {
+            in[v + 1] += in[v];
+        }
+        int[] next = Arrays.copyOf(in, nodeCount);
+        int[] sources = new int[edgeCount()];
+        int[] sourceWeights = new int[edgeCount()];
+        // Visiting sources in ascending order leaves every in-list sorted
+        for (int u = 0; u < nodeCount; u++) {
+            for (int e = outStart(u); e < outEnd(u); e++) {
+                int slot = next[targets.get(e)]++;
+                sources[slot] = u;
+                sourceWeights[slot] = weights.get(e);
+            }
+        }
+        inSources = sources;
+        inWeights = sourceWeights;
+        inOffsets = in;
+        return in;
+    }
+
+    // Returns the id of the edge source -> target, or -1 if there is no such edge
+    public int findEdge(int source, int target) {
+        int lo = offsets.get(source);
+        int hi = offsets.get(source + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int t = targets.get(mid);
+            if (t < target) {
+                lo = mid + 1;
+            } else if (t > target) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+// Open-addressing hash table counting (source id, target id) bigrams with primitive keys.
+public class EdgeCounter {
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private int[] counts;
+    private int size;
+
+    public EdgeCounter() {
+        this(16);
+    }
+
+    public EdgeCounter(int expectedEdges) {
+        int capacity = 16;
+        while (capacity * 3 < expectedEdges * 4) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    static long key(int source, int target) {
+        return ((long) source << 32) | (target & 0xFFFFFFFFL);
+    }
+
+    static int source(long key) {
+        return (int) (key >>> 32);
+    }
+
+    static int target(long key) {
+        return (int) key;
+    }
+
+    public void add(int source, int target) {
+        add(source, target, 1);
+    }
+
+    public void add(int source, int target, int count) {
+        long key = key(source, target);
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        counts[slot] = count;
+        if (++size * 4 > keys.length * 3) {
+            rehash();
+        }
+    }
+
+    // Adds every bigram of other, translating its word ids through remap
+    public void addAll(EdgeCounter other, int[] remap) {
+        for (int slot = 0; slot < other.keys.length; slot++) {
+            long key = other.keys[slot];
+            if (key != EMPTY) {
+                add(remap[source(key)], remap[target(key)], other.counts[slot]);
+            }
+        }
+    }
+
+    public int get(int source, int target) {
+        long key = key(source, target);
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    // All (source, target) keys in ascending order, i.e. grouped by source and sorted by target
+    public long[] sortedKeys() {
+        long[] sorted = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                sorted[n++] = key;
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Raw slot access for iteration: a slot is used when slotKey(i) != -1
+    int capacity() {
+        return keys.length;
+    }
+
+    long slotKey(int slot) {
+        return keys[slot];
+    }
+
+    int slotCount(int slot) {
+        return counts[slot];
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                add(source(oldKeys[i]), target(oldKeys[i]), oldCounts[i]);
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
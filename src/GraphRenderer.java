@@ -0,0 +1,269 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Turns DOT sources into images with the Graphviz dot executable. The DOT text is streamed
+// into dot's stdin as it is produced, so neither a temp file nor the whole source string is
+// ever materialised. Renders run on a small bounded pool; when the queue is full new requests
+// are refused instead of piling up behind a slow render. If dot cannot be started the DOT
+// source is written next to the image instead (graph.png -> graph.dot).
+public class GraphRenderer implements Closeable {
+    // Something that can write itself as DOT
+    public interface DotSource {
+        void writeTo(Writer out) throws IOException;
+    }
+
+    // A DOT source that also names its image in the render cache (see RenderCache.key)
+    public interface Drawing extends DotSource {
+        String cacheKey();
+    }
+
+    public static class Config {
+        private String dotExecutable = System.getProperty("wordgraph.dot", "dot");
+        private String outputDirectory = System.getProperty("wordgraph.pictureDir", "./picture");
+        private String imageFormat = "png";
+        private int threads = 1;
+        private int queueCapacity = 4;
+        private String cacheDirectory;
+        private long cacheBytes = 256L << 20;
+
+        // Path of the dot executable, or just "dot" to look it up on the PATH
+        public Config dotExecutable(String dotExecutable) {
+            this.dotExecutable = dotExecutable;
+            return this;
+        }
+
+        // Directory that images are written to, created on first use
+        public Config outputDirectory(String outputDirectory) {
+            this.outputDirectory = outputDirectory;
+            return this;
+        }
+
+        public Config imageFormat(String imageFormat) {
+            this.imageFormat = imageFormat;
+            return this;
+        }
+
+        // Renders that may run at once
+        public Config threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        // Renders that may wait for a thread before new ones are refused
+        public Config queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        // Where cached images are kept; defaults to "cache" under the output directory
+        public Config cacheDirectory(String cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+            return this;
+        }
+
+        // Disk space for cached images, 0 to turn the cache off
+        public Config cacheBytes(long cacheBytes) {
+            this.cacheBytes = cacheBytes;
+            return this;
+        }
+    }
+
+    private final Config config;
+    private final ThreadPoolExecutor executor;
+    private volatile boolean dotMissing;
+    private RenderCache cache;
+
+    public GraphRenderer(Config config) {
+        this.config = config;
+        this.executor = new ThreadPoolExecutor(config.threads, config.threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "graph-renderer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public Path outputDirectory() {
+        return Paths.get(config.outputDirectory);
+    }
+
+    public String imageFormat() {
+        return config.imageFormat;
+    }
+
+    // Queues a render of source into fileName under the output directory. The future completes
+    // with the file actually written (the image, or the .dot fallback), or exceptionally if the
+    // render failed or was refused because the queue is full.
+    public CompletableFuture<Path> render(String fileName, String imageFormat, DotSource source) {
+        CompletableFuture<Path> result = new CompletableFuture<>();
+        Path output = outputDirectory().resolve(fileName);
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(renderNow(output, imageFormat, source));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new IOException("Render queue is full, skipped " + fileName));
+        }
+        return result;
+    }
+
+    public CompletableFuture<Path> render(String fileName, DotSource source) {
+        return render(fileName, config.imageFormat, source);
+    }
+
+    // Like render, but the drawing is only made on the render thread, where its image is looked
+    // up in the render cache first: hashing a large graph for the cache key must not hold up the
+    // caller. A new image is added to the cache.
+    public CompletableFuture<Path> renderCached(String fileName, String imageFormat, Supplier<? extends Drawing> drawing) {
+        Path output = outputDirectory().resolve(fileName);
+        CompletableFuture<Path> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(renderCachedNow(output, imageFormat, drawing.get()));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new IOException("Render queue is full, skipped " + fileName));
+        }
+        return result;
+    }
+
+    private Path renderCachedNow(Path output, String imageFormat, Drawing drawing) throws IOException {
+        RenderCache renderCache = cache();
+        if (renderCache == null || dotMissing) {
+            return renderNow(output, imageFormat, drawing);
+        }
+        String cacheKey = drawing.cacheKey();
+        Path cached = renderCache.get(cacheKey);
+        if (cached != null) {
+            return copy(cached, output);
+        }
+        Path temporary = renderCache.temporaryFile(cacheKey);
+        Path rendered = renderNow(temporary, imageFormat, drawing);
+        if (!rendered.equals(temporary)) {
+            // No dot executable: keep the DOT source under the requested name, uncached
+            return Files.move(rendered, dotFileFor(output), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return copy(renderCache.put(cacheKey, rendered), output);
+    }
+
+    // The image cache, created on first use; null if it is turned off or cannot be opened
+    public synchronized RenderCache cache() {
+        if (cache == null && config.cacheBytes > 0) {
+            Path directory = config.cacheDirectory != null ? Paths.get(config.cacheDirectory) : outputDirectory().resolve("cache");
+            try {
+                cache = new RenderCache(directory, config.cacheBytes);
+            } catch (IOException e) {
+                System.err.println("Render cache disabled, cannot open " + directory + ": " + e.getMessage());
+                config.cacheBytes = 0;
+            }
+        }
+        return cache;
+    }
+
+    private static Path copy(Path cached, Path output) throws IOException {
+        Path directory = output.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        return Files.copy(cached, output, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Renders on the calling thread
+    Path renderNow(Path output, String imageFormat, DotSource source) throws IOException {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = Metrics.ENABLED ? Metrics.allocatedBytes() : 0;
+        try {
+            return renderDot(output, imageFormat, source);
+        } finally {
+            if (Metrics.ENABLED) {
+                Metrics.RENDER.record(start, allocated, 0, 0);
+            }
+        }
+    }
+
+    private Path renderDot(Path output, String imageFormat, DotSource source) throws IOException {
+        Path directory = output.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Process process = dotMissing ? null : startDot(output, imageFormat);
+        if (process == null) {
+            Path dotFile = dotFileFor(output);
+            try (Writer out = Files.newBufferedWriter(dotFile, StandardCharsets.UTF_8)) {
+                source.writeTo(out);
+            }
+            return dotFile;
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8), 64 << 10)) {
+            source.writeTo(out);
+        } catch (IOException e) {
+            process.destroy();
+            throw e;
+        }
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("Failed to convert DOT to image. Exit code: " + exitCode);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new IOException("Interrupted while converting DOT to image", e);
+        }
+        return output;
+    }
+
+    // Starts dot reading from stdin, or returns null (once reported) if it cannot be run
+    private Process startDot(Path output, String imageFormat) {
+        ProcessBuilder builder = new ProcessBuilder(config.dotExecutable, "-T" + imageFormat, "-o", output.toString());
+        builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            return builder.start();
+        } catch (IOException e) {
+            dotMissing = true;
+            System.err.println("Graphviz not available (" + e.getMessage() + "), writing DOT files instead");
+            return null;
+        }
+    }
+
+    private static Path dotFileFor(Path output) {
+        String name = output.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return output.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".dot");
+    }
+
+    // Lets queued renders finish, then stops the pool
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for renders", e);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Binary snapshot of a word graph: dictionary, CSR adjacency and weights in one little-endian
+// file that is memory-mapped on load, so queries can start before the data is paged in.
+//
+// Layout (every section starts on an 8-byte boundary):
+//   header       HEADER_BYTES, see the offsets below; the last 8 bytes are a CRC32 of the rest
+//   wordOffsets  int[nodeCount + 1]  byte offset of each word in wordBytes
+//   wordBytes    byte[wordBytesLength] UTF-8 words, back to back
+//   wordSlots    int[hashSlots]      open-addressing word -> id + 1 table (FNV-1a hash)
+//   offsets      int[nodeCount + 1]  CSR row starts
+//   targets      int[edgeCount]
+//   weights      int[edgeCount]
+// The body CRC32 covers all sections; it is only checked by verify(), since reading the whole
+// file would defeat lazy loading. load() does cheaper structural checks instead: the section
+// lengths must add up to the body length, and both offset tables must rise to their section's
+// end, which reads O(V) of the file and catches truncation and most torn writes.
+public class GraphSnapshotFile {
+    static final long MAGIC = 0x3130504E53475757L; // "WWGSNP01" read little-endian
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 88;
+
+    private static final int MAGIC_AT = 0;
+    private static final int FORMAT_AT = 8;
+    private static final int NODES_AT = 12;
+    private static final int EDGES_AT = 16;
+    private static final int SLOTS_AT = 20;
+    private static final int WORD_BYTES_AT = 24;
+    private static final int GRAPH_VERSION_AT = 32;
+    private static final int SOURCE_SIZE_AT = 40;
+    private static final int SOURCE_MODIFIED_AT = 48;
+    private static final int BODY_LENGTH_AT = 56;
+    private static final int BODY_CRC_AT = 64;
+    private static final int HEADER_CRC_AT = 80;
+
+    // Fingerprint of the corpus a snapshot was built from, used to detect stale snapshots
+    public static class Source {
+        public final long size;
+        public final long lastModified;
+
+        public Source(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public static Source of(Path corpus) throws IOException {
+            return new Source(Files.size(corpus), Files.getLastModifiedTime(corpus).toMillis());
+        }
+
+        public boolean matches(Source other) {
+            return size == other.size && lastModified == other.lastModified;
+        }
+    }
+
+    private final Path path;
+    private final Source source;
+    private final CsrGraph graph;
+    private final long bodyCrc;
+    private final long bodyLength;
+
+    private GraphSnapshotFile(Path path, Source source, CsrGraph graph, long bodyCrc, long bodyLength) {
+        this.path = path;
+        this.source = source;
+        this.graph = graph;
+        this.bodyCrc = bodyCrc;
+        this.bodyLength = bodyLength;
+    }
+
+    public Source source() {
+        return source;
+    }
+
+    // The mapped graph; its dictionary() serves the words from the same file
+    public CsrGraph graph() {
+        return graph;
+    }
+
+    // Writes the snapshot to a temporary file next to path and moves it into place
+    public static void save(CsrGraph graph, Source source, Path path) throws IOException {
+        int nodeCount = graph.nodeCount();
+        int edgeCount = graph.edgeCount();
+        byte[][] words = new byte[nodeCount][];
+        long wordBytesLength = 0;
+        for (int u = 0; u < nodeCount; u++) {
+            words[u] = graph.word(u).getBytes(StandardCharsets.UTF_8);
+            wordBytesLength += words[u].length;
+        }
+        if (wordBytesLength > Integer.MAX_VALUE) {
+            throw new IOException("Dictionary too large for the snapshot format: " + wordBytesLength + " bytes");
+        }
+        int hashSlots = MappedWordTable.slotCount(nodeCount);
+        int[] slots = new int[hashSlots];
+        for (int u = 0; u < nodeCount; u++) {
+            int slot = MappedWordTable.hash(words[u], words[u].length) & (hashSlots - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (hashSlots - 1);
+            }
+            slots[slot] = u + 1;
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        long bodyLength;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            SectionWriter out = new SectionWriter(channel, crc);
+            channel.position(HEADER_BYTES);
+            int offset = 0;
+            out.putInt(0);
+            for (int u = 0; u < nodeCount; u++) {
+                offset += words[u].length;
+                out.putInt(offset);
+            }
+            out.align();
+            for (byte[] word : words) {
+                out.putBytes(word);
+            }
+            out.align();
+            for (int slot : slots) {
+                out.putInt(slot);
+            }
+            out.align();
+            for (int u = 0; u <= nodeCount; u++) {
+                out.putInt(u < nodeCount ? graph.outStart(u) : edgeCount);
+            }
+            out.align();
+            for (int e = 0; e < edgeCount; e++) {
+                out.putInt(graph.target(e));
+            }
+            out.align();
+            for (int e = 0; e < edgeCount; e++) {
+                out.putInt(graph.weight(e));
+            }
+            out.align();
+            bodyLength = out.finish();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC_AT, MAGIC);
+            header.putInt(FORMAT_AT, FORMAT_VERSION);
+            header.putInt(NODES_AT, nodeCount);
+            header.putInt(EDGES_AT, edgeCount);
+            header.putInt(SLOTS_AT, hashSlots);
+            header.putLong(WORD_BYTES_AT, wordBytesLength);
+            header.putLong(GRAPH_VERSION_AT, graph.version());
+            header.putLong(SOURCE_SIZE_AT, source.size);
+            header.putLong(SOURCE_MODIFIED_AT, source.lastModified);
+            header.putLong(BODY_LENGTH_AT, bodyLength);
+            header.putLong(BODY_CRC_AT, crc.getValue());
+            header.putLong(HEADER_CRC_AT, headerCrc(header));
+            header.rewind();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Maps the snapshot file. The header and the two offset tables are read and checked here;
+    // the other sections are paged in by the operating system as queries touch them.
+    public static GraphSnapshotFile load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a graph snapshot: " + path);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getLong(MAGIC_AT) != MAGIC) {
+                throw new IOException("Not a graph snapshot: " + path);
+            }
+            if (header.getInt(FORMAT_AT) != FORMAT_VERSION) {
+                throw new IOException("Unsupported graph snapshot format " + header.getInt(FORMAT_AT) + ": " + path);
+            }
+            if (header.getLong(HEADER_CRC_AT) != headerCrc(header)) {
+                throw new IOException("Corrupt graph snapshot header: " + path);
+            }
+            int nodeCount = header.getInt(NODES_AT);
+            int edgeCount = header.getInt(EDGES_AT);
+            int hashSlots = header.getInt(SLOTS_AT);
+            long wordBytesLength = header.getLong(WORD_BYTES_AT);
+            long bodyLength = header.getLong(BODY_LENGTH_AT);
+            if (channel.size() != HEADER_BYTES + bodyLength) {
+                throw new IOException("Truncated graph snapshot: " + path);
+            }
+            if (nodeCount < 0 || edgeCount < 0 || wordBytesLength < 0 || wordBytesLength > Integer.MAX_VALUE
+                    || hashSlots != MappedWordTable.slotCount(nodeCount)
+                    || bodyLength != bodyLength(nodeCount, edgeCount, hashSlots, wordBytesLength)) {
+                throw new IOException("Corrupt graph snapshot: section lengths do not match the header: " + path);
+            }
+
+            long position = HEADER_BYTES;
+            IntBuffer wordOffsets = mapInts(channel, position, nodeCount + 1);
+            position = aligned(position + 4L * (nodeCount + 1));
+            ByteBuffer wordBytes = channel.map(FileChannel.MapMode.READ_ONLY, position, (int) wordBytesLength);
+            position = aligned(position + wordBytesLength);
+            IntBuffer slots = mapInts(channel, position, hashSlots);
+            position = aligned(position + 4L * hashSlots);
+            IntBuffer offsets = mapInts(channel, position, nodeCount + 1);
+            position = aligned(position + 4L * (nodeCount + 1));
+            IntBuffer targets = mapInts(channel, position, edgeCount);
+            position = aligned(position + 4L * edgeCount);
+            IntBuffer weights = mapInts(channel, position, edgeCount);
+            checkRising(wordOffsets, wordBytesLength, "word offsets", path);
+            checkRising(offsets, edgeCount, "edge offsets", path);
+
+            WordDictionary dictionary = new WordDictionary(new MappedWordTable(nodeCount, wordOffsets, wordBytes, slots));
+            CsrGraph graph = new CsrGraph(header.getLong(GRAPH_VERSION_AT), dictionary, nodeCount, offsets, targets, weights);
+            graph.useFileChecksum(header.getLong(BODY_CRC_AT), bodyLength);
+            Source source = new Source(header.getLong(SOURCE_SIZE_AT), header.getLong(SOURCE_MODIFIED_AT));
+            return new GraphSnapshotFile(path, source, graph, header.getLong(BODY_CRC_AT), bodyLength);
+        }
+    }
+
+    // Reads the whole body and compares it with the stored checksum
+    public boolean verify() throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = HEADER_BYTES;
+            long end = HEADER_BYTES + bodyLength;
+            while (position < end) {
+                long length = Math.min(1L << 30, end - position);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                crc.update(chunk);
+                position += length;
+            }
+        }
+        return crc.getValue() == bodyCrc;
+    }
+
+    // Body length of a snapshot with these counts, every section padded to 8 bytes
+    private static long bodyLength(int nodeCount, int edgeCount, int hashSlots, long wordBytesLength) {
+        return aligned(4L * (nodeCount + 1)) + aligned(wordBytesLength) + aligned(4L * hashSlots)
+                + aligned(4L * (nodeCount + 1)) + 2 * aligned(4L * edgeCount);
+    }
+
+    // An offset table must start at 0, never decrease and end at the length of what it indexes
+    private static void checkRising(IntBuffer offsets, long end, String section, Path path) throws IOException {
+        int previous = offsets.get(0);
+        if (previous != 0) {
+            throw new IOException("Corrupt graph snapshot: " + section + " do not start at 0: " + path);
+        }
+        for (int i = 1; i < offsets.capacity(); i++) {
+            int offset = offsets.get(i);
+            if (offset < previous) {
+                throw new IOException("Corrupt graph snapshot: " + section + " decrease at " + i + ": " + path);
+            }
+            previous = offset;
+        }
+        if (previous != end) {
+            throw new IOException("Corrupt graph snapshot: " + section + " end at " + previous + ", not " + end + ": " + path);
+        }
+    }
+
+    private static IntBuffer mapInts(FileChannel channel, long position, int count) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * count)
+                .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static long aligned(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static long headerCrc(ByteBuffer header) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < HEADER_CRC_AT; i++) {
+            crc.update(header.get(i));
+        }
+        return crc.getValue();
+    }
+
+    // Buffers little-endian body writes, feeding every byte to the checksum
+    private static class SectionWriter {
+        private final FileChannel channel;
+        private final CRC32 crc;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long written;
+
+        SectionWriter(FileChannel channel, CRC32 crc) {
+            this.channel = channel;
+            this.crc = crc;
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                drain();
+            }
+            buffer.putInt(value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            for (int i = 0; i < bytes.length; ) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - i);
+                buffer.put(bytes, i, length);
+                i += length;
+            }
+        }
+
+        // Pads with zeros to the next 8-byte boundary of the file
+        void align() throws IOException {
+            while (((HEADER_BYTES + written + buffer.position()) & 7) != 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                buffer.put((byte) 0);
+            }
+        }
+
+        long finish() throws IOException {
+            drain();
+            return written;
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            ByteBuffer checked = buffer.duplicate();
+            crc.update(checked);
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
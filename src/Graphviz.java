@@ -1,141 +1,205 @@
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.Writer;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 public class Graphviz {
+    // Largest graph rendered as a whole; Graphviz layout time grows quickly beyond this
+    static final int DEFAULT_MAX_NODES = 300;
+    static final int DEFAULT_MAX_EDGES = 1000;
 
-    private static final String TEMP_DIR = "E:\\HIT\\3_2\\software\\lab1\\software_lab1\\temp";
-    private static final String DOT_EXECUTABLE_PATH = "C:\\Program Files\\Graphviz\\bin\\dot.exe";
+    private static GraphRenderer renderer;
 
-    public static void generateGraph(String dotSource, String outputFilePath, String imageFormat) throws IOException {
-        File dotFile = writeDotSourceToFile(dotSource);
-        if (dotFile != null) {
-            convertDotToImage(dotFile, outputFilePath, imageFormat);
+    // Renderer used by the helpers below, configured from the wordgraph.dot and
+    // wordgraph.pictureDir system properties unless replaced with setRenderer
+    public static synchronized GraphRenderer renderer() {
+        if (renderer == null) {
+            renderer = new GraphRenderer(new GraphRenderer.Config());
         }
+        return renderer;
     }
 
-    private static File writeDotSourceToFile(String dotSource) throws IOException {
-        File tempDotFile = Files.createTempFile(Paths.get(TEMP_DIR), "graph", ".dot").toFile();
+    public static synchronized void setRenderer(GraphRenderer newRenderer) {
+        renderer = newRenderer;
+    }
 
-        try (FileWriter writer = new FileWriter(tempDotFile)) {
-            writer.write(dotSource);
+    // Waits for queued renders, e.g. before the program exits
+    public static synchronized void shutdown() throws IOException {
+        if (renderer != null) {
+            renderer.close();
+            renderer = null;
         }
-        return tempDotFile;
     }
 
-
-    private static void convertDotToImage(File dotFile, String outputFilePath, String imageFormat) throws IOException {
-        String[] command = {DOT_EXECUTABLE_PATH, "-T" + imageFormat, dotFile.getAbsolutePath(), "-o", outputFilePath};
-        ProcessBuilder builder = new ProcessBuilder(command);
-        Process process = builder.start();
-        try {
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                System.err.println("Error: Failed to convert DOT to image. Exit code: " + exitCode);
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("Error: Interrupted while converting DOT to image.");
-        }
+    public static void generateGraph(String dotSource, String outputFilePath, String imageFormat) throws IOException {
+        renderer().renderNow(Paths.get(outputFilePath), imageFormat, out -> out.write(dotSource));
     }
 
-    public static void showDirectedGraph(WordGraph wordGraph) {
-        Map<String, Integer> edgeWeights = wordGraph.getEdgeWeights();
-        String dotSource = generateDotSource(wordGraph.getAdjacencyList(), edgeWeights);
+    // Renders the current snapshot in the background; the caller does not wait for the image.
+    // Graphs over the default budgets are reduced to their heaviest edges.
+    public static CompletableFuture<Path> showDirectedGraph(WordGraph wordGraph) {
+        CsrGraph graph = wordGraph.getGraph();
+        return showSubgraph(() -> Subgraph.fitting(graph, DEFAULT_MAX_NODES, DEFAULT_MAX_EDGES), "graph.png");
+    }
 
-//        System.out.println(dotSource);
+    // The maxEdges heaviest bigrams of the graph
+    public static CompletableFuture<Path> showTopEdges(WordGraph wordGraph, int maxEdges, String outputFileName) {
+        CsrGraph graph = wordGraph.getGraph();
+        return showSubgraph(() -> Subgraph.topEdges(graph, DEFAULT_MAX_NODES, maxEdges), outputFileName);
+    }
 
-        String outputFilePath = "./picture/graph.png";
-        String imageFormat = "png";
-        try {
-//            System.out.println("Generating graph...");
+    // The maxNodes words of highest PageRank and the bigrams between them
+    public static CompletableFuture<Path> showCentralWords(WordGraph wordGraph, int maxNodes, String outputFileName) {
+        return showSubgraph(() -> Subgraph.centralWords(wordGraph.wordCentrality(), maxNodes, DEFAULT_MAX_EDGES), outputFileName);
+    }
 
-            Graphviz.generateGraph(dotSource, outputFilePath, imageFormat);
-            System.out.println("Graph generated successfully: " + outputFilePath);
-        } catch (IOException e) {
-            System.err.println("Error generating graph: " + e.getMessage());
+    // Words within hops bigrams of word, in either direction
+    public static CompletableFuture<Path> showNeighbourhood(WordGraph wordGraph, String word, int hops, String outputFileName) {
+        CsrGraph graph = wordGraph.getGraph();
+        int node = graph.dictionary().idOf(word);
+        if (node < 0 || node >= graph.nodeCount()) {
+            CompletableFuture<Path> missing = new CompletableFuture<>();
+            missing.completeExceptionally(new IllegalArgumentException("No " + word + " in the graph!"));
+            return report(missing, () -> "", "Error generating graph: ");
         }
+        return showSubgraph(() -> Subgraph.neighbourhood(graph, node, hops, DEFAULT_MAX_NODES, DEFAULT_MAX_EDGES), outputFileName);
     }
 
+    public static CompletableFuture<Path> showSubgraph(Subgraph subgraph, String outputFileName) {
+        return showSubgraph(() -> subgraph, outputFileName);
+    }
 
-    private static String generateDotSource(Map<String, List<String>> adjacencyList, Map<String, Integer> edgeWeights) {
-        StringBuilder dotSource = new StringBuilder();
-        dotSource.append("digraph G {\n");
+    // The subgraph is selected on the render thread: that can mean a pass over every edge, which
+    // the caller should not wait for
+    public static CompletableFuture<Path> showSubgraph(Supplier<Subgraph> selection, String outputFileName) {
+        GraphRenderer renderer = renderer();
+        AtomicReference<Subgraph> selected = new AtomicReference<>();
+        CompletableFuture<Path> image = renderer.renderCached(outputFileName, renderer.imageFormat(), () -> {
+            Subgraph subgraph = selection.get();
+            selected.set(subgraph);
+            return new SubgraphDrawing(subgraph, new int[0], renderer.imageFormat());
+        });
+        return report(image, () -> {
+            Subgraph subgraph = selected.get();
+            return subgraph.truncated() ? "Graph (reduced to " + subgraph.nodeCount() + " nodes, "
+                    + subgraph.edgeCount() + " edges) generated successfully: " : "Graph generated successfully: ";
+        }, "Error generating graph: ");
+    }
 
-        // Add nodes with corresponding labels
-        for (Map.Entry<String, List<String>> entry : adjacencyList.entrySet()) {
-            String node = entry.getKey();
-            dotSource.append("\t\"" + node + "\" [label=\"" + node + "\"];\n");
-        }
+    // Highlights every shortest path from word1 to word2 in the whole graph, or in the paths
+    // and their neighbours when the graph is over the default budgets. Nothing is highlighted
+    // if a word is missing or word2 cannot be reached.
+    public static CompletableFuture<Path> generateGraphWithShortestPath(WordGraph wordGraph, String word1, String word2, String outputFileName, String imageFormat) {
+        ShortestPathTree tree = wordGraph.shortestPathTree(word1);
+        return generateGraphWithShortestPath(tree != null ? tree.graph() : wordGraph.getGraph(), tree, word2, outputFileName, imageFormat);
+    }
 
-        // Add edges with corresponding weights
-        Set<String> processedEdges = new HashSet<>(); // Keep track of processed edges to avoid duplicates
-        for (Map.Entry<String, List<String>> entry : adjacencyList.entrySet()) {
-            String node = entry.getKey();
-            List<String> adjacentNodes = entry.getValue();
-            for (String adjNode : adjacentNodes) {
-                String edge = node + " -> " + adjNode;
-                int weight = edgeWeights.getOrDefault(edge, 1); // Get weight from edgeWeights map
-                if (!processedEdges.contains(edge)) {
-                    dotSource.append("\t\"" + node + "\" -> \"" + adjNode + "\" [label=\"" + weight + "\"];\n");
-                    processedEdges.add(edge);
-                }
+    // Same, reading the paths from a tree the caller already has (null if word1 is missing), e.g.
+    // the one that answered calcShortestPath, so that no search runs again
+    public static CompletableFuture<Path> generateGraphWithShortestPath(CsrGraph graph, ShortestPathTree tree, String word2, String outputFileName, String imageFormat) {
+        int target = graph.dictionary().idOf(word2);
+        int[] pathEdges = tree != null && target >= 0 && target < graph.nodeCount()
+                ? tree.pathEdges(target, ShortestPathTree.MAX_PATHS) : new int[0];
+        return generateGraphWithEdges(graph, pathEdges, outputFileName, imageFormat);
+    }
+
+    // Draws graph with the given edge ids (sorted) in red; the subgraph around them is selected on
+    // the render thread
+    public static CompletableFuture<Path> generateGraphWithEdges(CsrGraph graph, int[] highlightedEdges, String outputFileName, String imageFormat) {
+        CompletableFuture<Path> image = renderer().renderCached(outputFileName, imageFormat, () -> {
+            Subgraph subgraph = graph.nodeCount() <= DEFAULT_MAX_NODES && graph.edgeCount() <= DEFAULT_MAX_EDGES
+                    ? Subgraph.fitting(graph, DEFAULT_MAX_NODES, DEFAULT_MAX_EDGES)
+                    : Subgraph.pathContext(graph, highlightedEdges, DEFAULT_MAX_NODES, DEFAULT_MAX_EDGES);
+            return new SubgraphDrawing(subgraph, highlightedEdges, imageFormat);
+        });
+        return report(image, () -> "Graph with shortest path generated successfully: ", "Error generating graph with shortest path: ");
+    }
+
+    // success is only asked for once the image is there
+    private static CompletableFuture<Path> report(CompletableFuture<Path> image, Supplier<String> success, String failure) {
+        return image.whenComplete((path, error) -> {
+            if (error == null) {
+                System.out.println(success.get() + path);
+            } else {
+                System.err.println(failure + error.getMessage());
             }
+        });
+    }
+
+    // A subgraph with some of its edges (sorted edge ids) highlighted
+    private static class SubgraphDrawing implements GraphRenderer.Drawing {
+        private final Subgraph subgraph;
+        private final int[] highlightedEdges;
+        private final String imageFormat;
+
+        SubgraphDrawing(Subgraph subgraph, int[] highlightedEdges, String imageFormat) {
+            this.subgraph = subgraph;
+            this.highlightedEdges = highlightedEdges;
+            this.imageFormat = imageFormat;
         }
 
-        dotSource.append("}");
-        return dotSource.toString();
-    }
+        @Override
+        public String cacheKey() {
+            return RenderCache.key(subgraph.graph(), subgraph.view(), highlightedEdges, imageFormat);
+        }
 
-    public static void generateGraphWithShortestPath(WordGraph wordGraph, String shortestPath, String outputFileName, String imageFormat) {
-        Map<String, Integer> edgeWeights = wordGraph.getEdgeWeights();
-        String dotSource = generateDotSourceWithShortestPath(wordGraph.getAdjacencyList(), edgeWeights, shortestPath);
-        String outputFilePath = "./picture/"+ outputFileName;
-        try {
-            generateGraph(dotSource, outputFilePath, imageFormat);
-            System.out.println("Graph with shortest path generated successfully: " + outputFilePath);
-        } catch (IOException e) {
-            System.err.println("Error generating graph with shortest path: " + e.getMessage());
+        @Override
+        public void writeTo(Writer out) throws IOException {
+            IntHashSet highlighted = new IntHashSet(highlightedEdges.length);
+            for (int edge : highlightedEdges) {
+                highlighted.add(edge);
+            }
+            writeDot(subgraph, highlighted, out);
         }
     }
 
-    private static String generateDotSourceWithShortestPath(Map<String, List<String>> adjacencyList, Map<String, Integer> edgeWeights, String shortestPath) {
-        StringBuilder dotSource = new StringBuilder();
-        dotSource.append("digraph G {\n");
+    // Streams the subgraph as DOT, one line per node and edge; edges in highlightedEdges (may
+    // be null) are drawn in red
+    static void writeDot(Subgraph subgraph, IntHashSet highlightedEdges, Writer out) throws IOException {
+        CsrGraph graph = subgraph.graph();
+        out.write("digraph G {\n");
 
         // Add nodes with corresponding labels
-        for (Map.Entry<String, List<String>> entry : adjacencyList.entrySet()) {
-            String node = entry.getKey();
-            dotSource.append("\t\"" + node + "\" [label=\"" + node + "\"];\n");
+        for (int i = 0; i < subgraph.nodeCount(); i++) {
+            String word = graph.word(subgraph.node(i));
+            out.write('\t');
+            writeQuoted(word, out);
+            out.write(" [label=");
+            writeQuoted(word, out);
+            out.write("];\n");
         }
 
-        // Add edges with corresponding weights, highlighting the edges in the shortest path
-        Set<String> processedEdges = new HashSet<>(); // Keep track of processed edges to avoid duplicates
-        for (Map.Entry<String, List<String>> entry : adjacencyList.entrySet()) {
-            String node = entry.getKey();
-            List<String> adjacentNodes = entry.getValue();
-            for (String adjNode : adjacentNodes) {
-                String edge = node + " -> " + adjNode;
-                int weight = edgeWeights.getOrDefault(edge, 1); // Get weight from edgeWeights map
-                if (!processedEdges.contains(edge)) {
-                    if (shortestPath.contains(edge)) {
-                        dotSource.append("\t\"" + node + "\" -> \"" + adjNode + "\" [label=\"" + weight + "\", color=\"red\"];\n");
-                    } else {
-                        dotSource.append("\t\"" + node + "\" -> \"" + adjNode + "\" [label=\"" + weight + "\"];\n");
-                    }
-                    processedEdges.add(edge);
-                }
-            }
+        // Add edges with corresponding weights
+        for (int i = 0; i < subgraph.edgeCount(); i++) {
+            int edge = subgraph.edge(i);
+            out.write('\t');
+            writeQuoted(graph.word(graph.source(edge)), out);
+            out.write(" -> ");
+            writeQuoted(graph.word(graph.target(edge)), out);
+            out.write(" [label=\"");
+            out.write(Integer.toString(graph.weight(edge)));
+            out.write(highlightedEdges != null && highlightedEdges.contains(edge) ? "\", color=\"red\"];\n" : "\"];\n");
+        }
+
+        out.write("}");
+        if (Metrics.ENABLED) {
+            Metrics.RENDER.recordVisited(subgraph.nodeCount(), subgraph.edgeCount());
         }
+    }
 
-        dotSource.append("}");
-        return dotSource.toString();
+    private static void writeQuoted(String word, Writer out) throws IOException {
+        out.write('"');
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+            }
+            out.write(c);
+        }
+        out.write('"');
     }
 
 }
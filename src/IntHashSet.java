@@ -0,0 +1,99 @@
+import java.util.Arrays;
+
+// Open-addressing set of non-negative ints, cleared in place so it can be reused across calls.
+// Each slot holds the value in its low and the epoch it was added in in its high 32 bits; slots
+// from an older epoch count as free, so clear() is O(1) however large the set has grown.
+public class IntHashSet {
+    private long[] slots;
+    private int epoch = 1;
+    private int size;
+
+    public IntHashSet() {
+        this(16);
+    }
+
+    public IntHashSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        slots = new long[capacity];
+    }
+
+    // Returns false if the value was already present
+    public boolean add(int value) {
+        int mask = slots.length - 1;
+        int slot = mix(value) & mask;
+        while (isUsed(slots[slot])) {
+            if ((int) slots[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = ((long) epoch << 32) | (value & 0xFFFFFFFFL);
+        if (++size * 2 > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        int mask = slots.length - 1;
+        int slot = mix(value) & mask;
+        while (isUsed(slots[slot])) {
+            if ((int) slots[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The values in no particular order
+    public int[] toArray() {
+        int[] values = new int[size];
+        int count = 0;
+        for (long slot : slots) {
+            if (isUsed(slot)) {
+                values[count++] = (int) slot;
+            }
+        }
+        return values;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            size = 0;
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(slots, 0);
+                epoch = 1;
+            }
+        }
+    }
+
+    private boolean isUsed(long slot) {
+        return (int) (slot >>> 32) == epoch;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        int oldEpoch = epoch;
+        slots = new long[old.length * 2];
+        epoch = 1;
+        size = 0;
+        for (long slot : old) {
+            if ((int) (slot >>> 32) == oldEpoch) {
+                add((int) slot);
+            }
+        }
+    }
+
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,298 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+// Goal-directed shortest paths with landmarks (ALT: A*, landmarks, triangle inequality). A few
+// landmark words are chosen up front and the distances from every landmark to every word and
+// from every word to every landmark are stored. For any landmark L the triangle inequality gives
+// lower bounds d(u, t) >= d(L, t) - d(L, u) and d(u, t) >= d(u, L) - d(t, L), and A* with the
+// largest of them settles mostly the nodes around the shortest path instead of a whole ball.
+// Distances and paths are exact; the bounds also prove a word unreachable when L reaches u but
+// not t, or t reaches L but u does not.
+//
+// Landmarks are picked farthest-point: first the word with the most successors, then each time
+// the word farthest from all landmarks chosen so far. One oracle serves one graph snapshot.
+public class LandmarkOracle {
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    private final CsrGraph graph;
+    private final int[] landmarks;
+    // Node-major: fromLandmark[v * k + i] = d(landmark i, v), toLandmark[v * k + i] = d(v, landmark i)
+    private final int[] fromLandmark;
+    private final int[] toLandmark;
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder settled = new LongAdder();
+    // Queries also answered by plain Dijkstra (compareWithDijkstra) and what both settled on them
+    private final LongAdder compared = new LongAdder();
+    private final LongAdder comparedSettled = new LongAdder();
+    private final LongAdder dijkstraSettled = new LongAdder();
+
+    private LandmarkOracle(CsrGraph graph, int[] landmarks, int[] fromLandmark, int[] toLandmark) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+    }
+
+    public static LandmarkOracle build(CsrGraph graph, int landmarkCount) {
+        int n = graph.nodeCount();
+        int k = Math.max(1, Math.min(landmarkCount, n));
+        int[] chosen = new int[k];
+        int[][] forward = new int[k][];
+        // Smallest distance from any chosen landmark; unreachable counts as farthest
+        int[] nearest = new int[n];
+        Arrays.fill(nearest, UNREACHED);
+        int count = 0;
+        int next = mostSuccessors(graph);
+        while (count < k && next >= 0) {
+            chosen[count] = next;
+            forward[count] = distances(graph, next, false);
+            for (int v = 0; v < n; v++) {
+                nearest[v] = Math.min(nearest[v], forward[count][v]);
+            }
+            nearest[next] = 0;
+            count++;
+            next = -1;
+            for (int v = 0; v < n; v++) {
+                if (nearest[v] > 0 && graph.outDegree(v) > 0 && (next < 0 || nearest[v] > nearest[next])) {
+                    next = v;
+                }
+            }
+        }
+        int[] landmarks = Arrays.copyOf(chosen, count);
+        return build(graph, landmarks, forward);
+    }
+
+    // Same landmarks on a changed snapshot, e.g. after an append; their words must still exist
+    public LandmarkOracle rebuild(CsrGraph next) {
+        return build(next, landmarks, new int[landmarks.length][]);
+    }
+
+    private static LandmarkOracle build(CsrGraph graph, int[] landmarks, int[][] forward) {
+        int n = graph.nodeCount();
+        int k = landmarks.length;
+        int[][] backward = new int[k][];
+        IntStream.range(0, k).parallel().forEach(i -> {
+            if (forward[i] == null) {
+                forward[i] = distances(graph, landmarks[i], false);
+            }
+            backward[i] = distances(graph, landmarks[i], true);
+        });
+        int[] fromLandmark = new int[n * k];
+        int[] toLandmark = new int[n * k];
+        for (int i = 0; i < k; i++) {
+            for (int v = 0; v < n; v++) {
+                fromLandmark[v * k + i] = forward[i][v];
+                toLandmark[v * k + i] = backward[i][v];
+            }
+        }
+        return new LandmarkOracle(graph, landmarks, fromLandmark, toLandmark);
+    }
+
+    private static int mostSuccessors(CsrGraph graph) {
+        int best = -1;
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            if (best < 0 || graph.outDegree(v) > graph.outDegree(best)) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    // Plain Dijkstra from source over out-edges, or over in-edges when reverse is set
+    private static int[] distances(CsrGraph graph, int source, boolean reverse) {
+        int[] distance = new int[graph.nodeCount()];
+        Arrays.fill(distance, UNREACHED);
+        LongMinHeap heap = new LongMinHeap();
+        distance[source] = 0;
+        heap.add(pack(0, source));
+        while (!heap.isEmpty()) {
+            long top = heap.poll();
+            int node = (int) top;
+            int d = (int) (top >>> 32);
+            if (d != distance[node]) {
+                continue;
+            }
+            int start = reverse ? graph.inStart(node) : graph.outStart(node);
+            int end = reverse ? graph.inEnd(node) : graph.outEnd(node);
+            for (int e = start; e < end; e++) {
+                int next = reverse ? graph.inSource(e) : graph.target(e);
+                int candidate = d + (reverse ? graph.inWeight(e) : graph.weight(e));
+                if (candidate < distance[next]) {
+                    distance[next] = candidate;
+                    heap.add(pack(candidate, next));
+                }
+            }
+        }
+        return distance;
+    }
+
+    public CsrGraph graph() {
+        return graph;
+    }
+
+    public int landmarkCount() {
+        return landmarks.length;
+    }
+
+    public int landmark(int i) {
+        return landmarks[i];
+    }
+
+    // Lower bound on d(node, target) from all landmarks, UNREACHED if node cannot reach target
+    private int lowerBound(int node, int target) {
+        int k = landmarks.length;
+        int bound = 0;
+        for (int i = 0; i < k; i++) {
+            int fromNode = fromLandmark[node * k + i];
+            int fromTarget = fromLandmark[target * k + i];
+            if (fromNode != UNREACHED) {
+                if (fromTarget == UNREACHED) {
+                    return UNREACHED;
+                }
+                bound = Math.max(bound, fromTarget - fromNode);
+            }
+            int nodeTo = toLandmark[node * k + i];
+            int targetTo = toLandmark[target * k + i];
+            if (targetTo != UNREACHED) {
+                if (nodeTo == UNREACHED) {
+                    return UNREACHED;
+                }
+                bound = Math.max(bound, nodeTo - targetTo);
+            }
+        }
+        return bound;
+    }
+
+    // Runs A* from source to target and lists up to pathLimit shortest paths. The search goes on
+    // until no open node can lie on a shortest path, so that all equal-length paths are known.
+    public Search search(int source, int target, int pathLimit) {
+        try (TraversalWorkspace workspace = TraversalWorkspace.acquire(graph.nodeCount())) {
+            long outcome = run(workspace, source, target);
+            int distance = (int) outcome;
+            List<int[]> paths = distance < 0 ? new ArrayList<>()
+                    : ShortestPathTree.tightPaths(graph, source, target, pathLimit, workspace);
+            return new Search(distance, (int) (outcome >>> 32), paths);
+        }
+    }
+
+    // Shortest distance from source to target, or -1 if it is unreachable. Allocates nothing
+    // once the workspace pool is warm.
+    public int distance(int source, int target) {
+        try (TraversalWorkspace workspace = TraversalWorkspace.acquire(graph.nodeCount())) {
+            return (int) run(workspace, source, target);
+        }
+    }
+
+    // Returns the settled count in the high and the distance (or -1) in the low 32 bits
+    private long run(TraversalWorkspace workspace, int source, int target) {
+        LongMinHeap heap = workspace.heap();
+        int settledCount = 0;
+        int best = UNREACHED;
+        int h = lowerBound(source, target);
+        if (h != UNREACHED) {
+            workspace.reach(source, 0);
+            heap.add(pack(h, source));
+        }
+        while (!heap.isEmpty() && (int) (heap.peek() >>> 32) <= best) {
+            long top = heap.poll();
+            int node = (int) top;
+            if (workspace.isSettled(node)) {
+                continue;
+            }
+            workspace.settle(node);
+            settledCount++;
+            int d = workspace.distance(node);
+            if (node == target) {
+                best = d;
+            }
+            for (int e = graph.outStart(node); e < graph.outEnd(node); e++) {
+                int next = graph.target(e);
+                int candidate = d + graph.weight(e);
+                if (!workspace.isSettled(next) && (!workspace.isReached(next) || candidate < workspace.distance(next))) {
+                    int bound = lowerBound(next, target);
+                    if (bound != UNREACHED && (long) candidate + bound <= best) {
+                        workspace.reach(next, candidate);
+                        heap.add(pack(candidate + bound, next));
+                    }
+                }
+            }
+        }
+        queries.increment();
+        settled.add(settledCount);
+        int distance = workspace.isSettled(target) ? best : -1;
+        return ((long) settledCount << 32) | (distance & 0xFFFFFFFFL);
+    }
+
+    // Nodes plain Dijkstra settles before it can answer the same query, for comparison
+    public static int dijkstraSettledCount(CsrGraph graph, int source, int target) {
+        ShortestPathTree tree = new ShortestPathTree(graph, source);
+        tree.distance(target);
+        return tree.settledCount();
+    }
+
+    // Answers the query of an earlier search again with plain Dijkstra and adds both settled
+    // counts to the comparison; returns the Dijkstra count
+    public int compareWithDijkstra(int source, int target, Search search) {
+        int dijkstra = dijkstraSettledCount(graph, source, target);
+        compared.increment();
+        comparedSettled.add(search.settledCount());
+        dijkstraSettled.add(dijkstra);
+        return dijkstra;
+    }
+
+    public double averageSettled() {
+        long q = queries.sum();
+        return q == 0 ? 0 : (double) settled.sum() / q;
+    }
+
+    // Average settled by plain Dijkstra over the compared queries, 0 if there are none
+    public double averageDijkstraSettled() {
+        long q = compared.sum();
+        return q == 0 ? 0 : (double) dijkstraSettled.sum() / q;
+    }
+
+    @Override
+    public String toString() {
+        String text = String.format("landmarks=%d queries=%d settled(avg)=%.1f", landmarks.length, queries.sum(), averageSettled());
+        long q = compared.sum();
+        if (q > 0) {
+            text += String.format(" compared=%d settled(avg)=%.1f dijkstra(avg)=%.1f",
+                    q, (double) comparedSettled.sum() / q, averageDijkstraSettled());
+        }
+        return text;
+    }
+
+    private static long pack(int distance, int node) {
+        return ((long) distance << 32) | node;
+    }
+
+    // Outcome of one A* query
+    public static class Search {
+        private final int distance;
+        private final int settledCount;
+        private final List<int[]> paths;
+
+        Search(int distance, int settledCount, List<int[]> paths) {
+            this.distance = distance;
+            this.settledCount = settledCount;
+            this.paths = paths;
+        }
+
+        // Shortest distance, or -1 if the target is unreachable
+        public int distance() {
+            return distance;
+        }
+
+        public int settledCount() {
+            return settledCount;
+        }
+
+        // The shortest paths found, in the same order as ShortestPathTree.paths
+        public List<int[]> paths() {
+            return paths;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.Arrays;
+
+// Binary min-heap of primitive longs. Dijkstra packs (distance << 32 | node) into one value,
+// so ordering by the long orders by distance, and stale entries are skipped on poll.
+public class LongMinHeap {
+    private long[] heap;
+    private int size;
+
+    public LongMinHeap() {
+        this(16);
+    }
+
+    public LongMinHeap(int capacity) {
+        this.heap = new long[Math.max(capacity, 1)];
+    }
+
+    public void add(long value) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = value;
+    }
+
+    // Smallest value without removing it; the heap must not be empty
+    public long peek() {
+        return heap[0];
+    }
+
+    public long poll() {
+        long top = heap[0];
+        long last = heap[--size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (last <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // Empties the heap and gives back its storage
+    public void release() {
+        size = 0;
+        heap = new long[1];
+    }
+}
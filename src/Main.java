@@ -1,27 +1,50 @@
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 //第一次修改
 //第二次修改
 public class Main {
+    private static final String RANDOM_WALK_FILE = "./src/random_walk_result.txt";
+    private static final String SNAPSHOT_SUFFIX = ".wgsnap";
+    private static final int DEFAULT_SERVER_PORT = 7070;
+    private static final int DEFAULT_RANKED_WORDS = 20;
 
     public static void main(String[] args) {
 
 
 
         String filePath = "./src/test.txt";
-        // Create WordGraph instance
-        WordGraph wordGraph = new WordGraph();
 
 
+        Metrics.installFromSystemProperties();
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(args.length > 2 ? args[2] : filePath, args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SERVER_PORT);
+            return;
+        }
+        if (args.length > 2 && args[0].equals("--batch")) {
+            batch(args[1], args[2], args.length > 3 ? args[3] : null, args.length > 4 ? args[4] : filePath);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--rank")) {
+            rank(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RANKED_WORDS, args.length > 2 ? args[2] : filePath);
+            return;
+        }
         try {
-            String processedContent = readFileContent(filePath);
-            wordGraph.buildGraph(processedContent);
+            WordGraph wordGraph = loadGraph(filePath, filePath + SNAPSHOT_SUFFIX);
             Graphviz.showDirectedGraph(wordGraph);
 
             boolean exit = false;
             Scanner scanner = new Scanner(System.in);
+            ResultSink walkSink = new ResultSink(new ResultSink.Config(RANDOM_WALK_FILE));
             while (!exit) {
                 System.out.println("Choose an option:");
                 System.out.println("1. Query Bridge Words");
@@ -48,10 +71,15 @@ public class Main {
                         printShortestDistancesFromWord(wordGraph, scanner);
                         break;
                     case 5:
-                        randomWalk(wordGraph, scanner);
+                        randomWalk(wordGraph, walkSink);
                         break;
                     case 6:
                         exit = true;
+                        walkSink.close();
+                        Graphviz.shutdown();
+                        if (Metrics.ENABLED) {
+                            System.out.print(Metrics.toText());
+                        }
                         break;
                     default:
                         System.out.println("Invalid choice. Please enter a number between 1 and 5.");
@@ -63,7 +91,89 @@ public class Main {
 
     }
 
-    private static String readFileContent(String filePath) throws IOException {
+    // Server mode: java Main --serve [PORT [CORPUS]] answers queries on 127.0.0.1:PORT until
+    // the process is stopped, see QueryServer for the protocol
+    private static void serve(String filePath, int port) {
+        int maxInFlight = Integer.getInteger("wordgraph.server.maxInFlight", QueryServer.DEFAULT_MAX_IN_FLIGHT);
+        try {
+            WordGraph wordGraph = loadGraph(filePath, filePath + SNAPSHOT_SUFFIX);
+            try (QueryServer server = new QueryServer(wordGraph, port, maxInFlight)) {
+                System.out.println("Serving " + filePath + " on 127.0.0.1:" + server.port());
+                server.serve();
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while starting the server: " + e.getMessage());
+        }
+    }
+
+    // Batch mode: java Main --batch bridge|path|text QUERIES [OUTPUT [CORPUS]] answers every line
+    // of the query file in order, to OUTPUT or standard output, see BatchQueryRunner
+    private static void batch(String mode, String queryPath, String outputPath, String filePath) {
+        try {
+            WordGraph wordGraph = loadGraph(filePath, filePath + SNAPSHOT_SUFFIX);
+            BatchQueryRunner runner = new BatchQueryRunner(wordGraph, mode, ForkJoinPool.commonPool(), System.err);
+            try (BufferedReader in = Files.newBufferedReader(Paths.get(queryPath), StandardCharsets.UTF_8);
+                 Writer out = new BufferedWriter(outputPath == null
+                         ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                         : Files.newBufferedWriter(Paths.get(outputPath), StandardCharsets.UTF_8), 1 << 16)) {
+                runner.run(in, out, Long.getLong("wordgraph.seed", System.nanoTime()));
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while running the batch: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // Ranking mode: java Main --rank [K [CORPUS]] prints the K words of highest PageRank with their
+    // weighted in- and out-degrees, see WordCentrality
+    private static void rank(int count, String filePath) {
+        try {
+            WordGraph wordGraph = loadGraph(filePath, filePath + SNAPSHOT_SUFFIX);
+            long start = System.nanoTime();
+            WordCentrality centrality = wordGraph.wordCentrality();
+            System.out.printf("%s in %.1f ms%n", centrality, (System.nanoTime() - start) / 1e6);
+            for (int node : centrality.topByRank(count)) {
+                System.out.printf(Locale.ROOT, "%-20s %.6f in=%d out=%d%n", centrality.graph().word(node),
+                        centrality.rank(node), centrality.inWeight(node), centrality.outWeight(node));
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the file: " + e.getMessage());
+        }
+    }
+
+    // Maps the snapshot next to the corpus when it was built from the current file, otherwise
+    // builds the graph from the text and writes a fresh snapshot for the next start. With
+    // -Dwordgraph.verifySnapshot=true the whole snapshot is checksummed before it is used, which
+    // reads the file once instead of paging it in lazily.
+    static WordGraph loadGraph(String filePath, String snapshotPath) throws IOException {
+        Path snapshot = Paths.get(snapshotPath);
+        if (Files.exists(snapshot)) {
+            try {
+                GraphSnapshotFile file = GraphSnapshotFile.load(snapshot);
+                if (file.source().matches(GraphSnapshotFile.Source.of(Paths.get(filePath)))) {
+                    if (Boolean.getBoolean("wordgraph.verifySnapshot") && !file.verify()) {
+                        throw new IOException("checksum mismatch");
+                    }
+                    return WordGraph.loadSnapshot(file);
+                }
+            } catch (IOException e) {
+                System.err.println("Ignoring graph snapshot " + snapshotPath + ": " + e.getMessage());
+            }
+        }
+        WordGraph wordGraph = new WordGraph();
+        wordGraph.buildGraphFromFileParallel(filePath, ForkJoinPool.commonPool());
+        try {
+            wordGraph.saveSnapshot(snapshotPath, filePath);
+        } catch (IOException e) {
+            System.err.println("Could not write graph snapshot " + snapshotPath + ": " + e.getMessage());
+        }
+        return wordGraph;
+    }
+
+    // Reference loader: reads the whole file into memory. Main maps the graph snapshot or builds
+    // with WordGraph.buildGraphFromFileParallel instead; both give the same graph as this does.
+    static String readFileContent(String filePath) throws IOException {
         // Read the file content
         StringBuilder content = new StringBuilder();
         BufferedReader reader = new BufferedReader(new FileReader(filePath));
@@ -103,10 +213,14 @@ public class Main {
         System.out.println("Enter two words to calculate shortest path:");
         String word1 = scanner.nextLine();
         String word2 = scanner.nextLine();
+        // The cached tree answers the query and then hands its path edges to the picture, so
+        // Dijkstra runs once for both
+        CsrGraph graph = wordGraph.getGraph();
+        ShortestPathTree tree = wordGraph.shortestPathTree(word1);
         String shortestPath = wordGraph.calcShortestPath(word1, word2);
         System.out.println(shortestPath);
         String outputFileName = word1 + "_to_" + word2 + ".png";
-        Graphviz.generateGraphWithShortestPath(wordGraph, shortestPath, outputFileName, "png");
+        Graphviz.generateGraphWithShortestPath(tree != null ? tree.graph() : graph, tree, word2, outputFileName, "png");
 //        System.out.println("Shortest path between " + word1 + " and " + word2 + ": " + shortestPath);
     }
 
@@ -116,11 +230,13 @@ public class Main {
         wordGraph.printShortestDistancesFromWord(word);
     }
 
-    private static void randomWalk(WordGraph wordGraph, Scanner scanner) {
+    private static void randomWalk(WordGraph wordGraph, ResultSink walkSink) throws IOException {
         System.out.println("Starting random walk...");
         String randomWalkResult = wordGraph.randomWalk();
         System.out.println("Random walk result: " + randomWalkResult);
-        wordGraph.writeToFile("./src/random_walk_result.txt", randomWalkResult);
+        walkSink.accept(randomWalkResult);
+        walkSink.flush();
+        System.out.println("Random walk result has been written to file: " + RANDOM_WALK_FILE);
     }
 
 }
\ No newline at end of file
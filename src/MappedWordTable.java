@@ -0,0 +1,92 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Read-only word table served from a graph snapshot file. Word i is the UTF-8 bytes
+// wordBytes[wordOffsets[i] .. wordOffsets[i + 1]); word -> id goes through an open-addressing
+// table of (id + 1) slots stored in the file, so nothing has to be parsed at load time.
+// Decoded Strings are cached as they are asked for.
+public class MappedWordTable {
+    private final int size;
+    private final IntBuffer wordOffsets;
+    private final ByteBuffer wordBytes;
+    private final IntBuffer slots;
+    private volatile String[] decoded;
+
+    MappedWordTable(int size, IntBuffer wordOffsets, ByteBuffer wordBytes, IntBuffer slots) {
+        this.size = size;
+        this.wordOffsets = wordOffsets;
+        this.wordBytes = wordBytes;
+        this.slots = slots;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String word(int id) {
+        String[] cache = decoded;
+        if (cache == null) {
+            cache = new String[size];
+            decoded = cache;
+        }
+        String word = cache[id];
+        if (word == null) {
+            int from = wordOffsets.get(id);
+            byte[] bytes = new byte[wordOffsets.get(id + 1) - from];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = wordBytes.get(from + i);
+            }
+            word = new String(bytes, StandardCharsets.UTF_8);
+            cache[id] = word;
+        }
+        return word;
+    }
+
+    // Returns the id of the word, or -1 if it is not in the table
+    public int idOf(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int mask = slots.capacity() - 1;
+        int slot = hash(bytes, bytes.length) & mask;
+        int entry;
+        while ((entry = slots.get(slot)) != 0) {
+            if (matches(entry - 1, bytes)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean matches(int id, byte[] bytes) {
+        int from = wordOffsets.get(id);
+        if (wordOffsets.get(id + 1) - from != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (wordBytes.get(from + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Number of hash slots used for a table of the given size: a power of two at most half full
+    static int slotCount(int size) {
+        int slots = 2;
+        while (slots < size * 2) {
+            slots <<= 1;
+        }
+        return slots;
+    }
+
+    // FNV-1a over the UTF-8 bytes; part of the file format, so it must not change
+    static int hash(byte[] bytes, int length) {
+        int h = 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            h ^= bytes[i] & 0xFF;
+            h *= 0x01000193;
+        }
+        return h;
+    }
+}
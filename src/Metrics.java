@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Per-operation metrics of WordGraph: latency histograms, call counts, nodes and edges visited
+// and bytes allocated by the calling thread. Off unless the JVM runs with -Dwordgraph.metrics=true;
+// ENABLED is a constant, so when it is false the JIT drops the guarded recording code entirely.
+//
+// With metrics on, installFromSystemProperties registers an MBean per operation under
+// "wordgraph:type=Operation,name=..." and, if wordgraph.metrics.dumpSeconds is set, writes a
+// dump every that many seconds to wordgraph.metrics.dumpFile (JSON if it ends in .json,
+// text otherwise; standard error if unset).
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("wordgraph.metrics");
+
+    public static final OperationMetrics BUILD = new OperationMetrics("build");
+    public static final OperationMetrics BRIDGE_QUERY = new OperationMetrics("bridgeQuery");
+    public static final OperationMetrics TEXT_GENERATION = new OperationMetrics("textGeneration");
+    public static final OperationMetrics SHORTEST_PATH = new OperationMetrics("shortestPath");
+    public static final OperationMetrics SHORTEST_DISTANCES = new OperationMetrics("shortestDistances");
+    public static final OperationMetrics RANDOM_WALK = new OperationMetrics("randomWalk");
+    public static final OperationMetrics RENDER = new OperationMetrics("render");
+    // Plain Dijkstra run beside each landmark query, so that its nodes compare with shortestPath
+    public static final OperationMetrics LANDMARK_BASELINE = new OperationMetrics("landmarkBaseline");
+
+    private static final List<OperationMetrics> ALL = Collections.unmodifiableList(Arrays.asList(
+            BUILD, BRIDGE_QUERY, TEXT_GENERATION, SHORTEST_PATH, SHORTEST_DISTANCES, RANDOM_WALK, RENDER,
+            LANDMARK_BASELINE));
+
+    // Per-thread allocation counter of HotSpot-based JVMs, null where it is not available
+    private static final com.sun.management.ThreadMXBean ALLOCATION = allocationCounter();
+
+    private static ScheduledExecutorService reporter;
+
+    private Metrics() {
+    }
+
+    public static List<OperationMetrics> all() {
+        return ALL;
+    }
+
+    // Bytes allocated so far by the current thread, or -1 if the JVM cannot tell
+    public static long allocatedBytes() {
+        return ALLOCATION == null ? -1 : ALLOCATION.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (!ENABLED) {
+            return null;
+        }
+        try {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+                if (counter.isThreadAllocatedMemorySupported()) {
+                    counter.setThreadAllocatedMemoryEnabled(true);
+                    return counter;
+                }
+            }
+        } catch (LinkageError | UnsupportedOperationException e) {
+            // Not a HotSpot-based JVM: allocation is not tracked
+        }
+        return null;
+    }
+
+    public static void reset() {
+        for (OperationMetrics metrics : ALL) {
+            metrics.reset();
+        }
+    }
+
+    // One line per operation
+    public static String toText() {
+        StringBuilder text = new StringBuilder();
+        for (OperationMetrics metrics : ALL) {
+            text.append(metrics).append('\n');
+        }
+        return text.toString();
+    }
+
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\"timestamp\":").append(System.currentTimeMillis()).append(",\"operations\":[");
+        for (int i = 0; i < ALL.size(); i++) {
+            json.append(i > 0 ? "," : "").append(ALL.get(i).toJson());
+        }
+        return json.append("]}\n").toString();
+    }
+
+    public static void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (OperationMetrics metrics : ALL) {
+            ObjectName name = new ObjectName("wordgraph:type=Operation,name=" + metrics.name());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        }
+    }
+
+    // Writes a dump every periodSeconds on a daemon thread; the file is replaced each time
+    public static synchronized void startReporter(long periodSeconds, Path file) {
+        stopReporter();
+        boolean json = file != null && file.getFileName().toString().endsWith(".json");
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            String dump = json ? toJson() : toText();
+            if (file == null) {
+                System.err.print(dump);
+                return;
+            }
+            try {
+                Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.write(temp, dump.getBytes(StandardCharsets.UTF_8));
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.shutdown();
+            reporter = null;
+        }
+    }
+
+    // Registers the MBeans and starts the periodic dump as configured by system properties;
+    // does nothing when metrics are off
+    public static void installFromSystemProperties() {
+        if (!ENABLED) {
+            return;
+        }
+        try {
+            registerMBeans();
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBeans: " + e.getMessage());
+        }
+        long period = Long.getLong("wordgraph.metrics.dumpSeconds", 0);
+        if (period > 0) {
+            String file = System.getProperty("wordgraph.metrics.dumpFile");
+            startReporter(period, file == null ? null : Paths.get(file));
+        }
+    }
+}
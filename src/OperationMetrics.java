@@ -0,0 +1,112 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency histogram and work counters of one kind of operation (see Metrics). Every call site
+// guards its recording with Metrics.ENABLED, so nothing here runs when metrics are off.
+public class OperationMetrics implements OperationMetricsMBean {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder nodesVisited = new LongAdder();
+    private final LongAdder edgesVisited = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    // One call that started at startNanos (System.nanoTime) on this thread, when the thread had
+    // allocated startAllocated bytes (Metrics.allocatedBytes), and visited the given work
+    public void record(long startNanos, long startAllocated, long nodes, long edges) {
+        latency.record(System.nanoTime() - startNanos);
+        long allocated = Metrics.allocatedBytes();
+        if (allocated >= 0 && startAllocated >= 0) {
+            allocatedBytes.add(allocated - startAllocated);
+        }
+        recordVisited(nodes, edges);
+    }
+
+    // Work done outside a timed call, e.g. by a helper that does not know the start time
+    public void recordVisited(long nodes, long edges) {
+        if (nodes != 0) {
+            nodesVisited.add(nodes);
+        }
+        if (edges != 0) {
+            edgesVisited.add(edges);
+        }
+    }
+
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.count();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.mean() / 1e3;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latency.percentile(0.5) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latency.percentile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latency.percentile(0.999) / 1e3;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latency.max() / 1e3;
+    }
+
+    @Override
+    public long getNodesVisited() {
+        return nodesVisited.sum();
+    }
+
+    @Override
+    public long getEdgesVisited() {
+        return edgesVisited.sum();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        nodesVisited.reset();
+        edgesVisited.reset();
+        allocatedBytes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%-18s count=%d mean=%.1f us p50=%.1f us p99=%.1f us p999=%.1f us max=%.1f us nodes=%d edges=%d allocated=%d B",
+                name, getCount(), getMeanMicros(), getP50Micros(), getP99Micros(), getP999Micros(), getMaxMicros(),
+                getNodesVisited(), getEdgesVisited(), getAllocatedBytes());
+    }
+
+    String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"name\":\"%s\",\"count\":%d,\"meanMicros\":%.3f,\"p50Micros\":%.3f,\"p99Micros\":%.3f,\"p999Micros\":%.3f,\"maxMicros\":%.3f,\"nodesVisited\":%d,\"edgesVisited\":%d,\"allocatedBytes\":%d}",
+                name, getCount(), getMeanMicros(), getP50Micros(), getP99Micros(), getP999Micros(), getMaxMicros(),
+                getNodesVisited(), getEdgesVisited(), getAllocatedBytes());
+    }
+}
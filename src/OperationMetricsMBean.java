@@ -0,0 +1,22 @@
+// JMX view of one OperationMetrics; latencies are in microseconds
+public interface OperationMetricsMBean {
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    long getNodesVisited();
+
+    long getEdgesVisited();
+
+    long getAllocatedBytes();
+
+    void reset();
+}
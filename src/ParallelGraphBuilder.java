@@ -0,0 +1,152 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Builds the bigram counts of a corpus file on a fork-join pool. The file is cut into shards at
+// whitespace bytes, every shard is tokenised into its own dictionary and edge table, and the
+// shards are merged in file order. Interning the shard words in order reproduces the word ids of
+// the sequential build, and the bigram spanning two shards is added while stitching them, so the
+// merged graph is identical to CorpusReader over the whole file.
+public class ParallelGraphBuilder {
+    // Shards smaller than this are not worth a task of their own
+    static final long MIN_SHARD_BYTES = 1 << 20;
+
+    private final ForkJoinPool pool;
+    private final long minShardBytes;
+
+    public ParallelGraphBuilder(ForkJoinPool pool) {
+        this(pool, MIN_SHARD_BYTES);
+    }
+
+    public ParallelGraphBuilder(ForkJoinPool pool, long minShardBytes) {
+        this.pool = pool;
+        this.minShardBytes = minShardBytes;
+    }
+
+    public void build(Path path, WordDictionary dictionary, EdgeCounter edges) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int shardCount = (int) Math.min(pool.getParallelism() * 4L, size / minShardBytes);
+            if (shardCount <= 1) {
+                new CorpusReader(dictionary).read(path, new BigramCollector(edges));
+                return;
+            }
+
+            long[] bounds = shardBounds(channel, size, shardCount);
+            List<ShardTask> shards = new ArrayList<>(shardCount);
+            for (int i = 0; i < shardCount; i++) {
+                shards.add(new ShardTask(channel, bounds[i], bounds[i + 1]));
+            }
+            try {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        ForkJoinTask.invokeAll(shards);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            merge(shards, dictionary, edges);
+        }
+    }
+
+    // Splits [0, size) into ranges whose inner bounds sit on whitespace bytes
+    private static long[] shardBounds(FileChannel channel, long size, int shardCount) throws IOException {
+        long[] bounds = new long[shardCount + 1];
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for (int i = 1; i < shardCount; i++) {
+            long position = Math.max(size / shardCount * i, bounds[i - 1]);
+            bounds[i] = nextWhitespace(channel, position, size, buffer);
+        }
+        bounds[shardCount] = size;
+        return bounds;
+    }
+
+    private static long nextWhitespace(FileChannel channel, long position, long size, ByteBuffer buffer) throws IOException {
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (CorpusReader.isWhitespace(buffer.get(i))) {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // Folds the shard tables into the global ones in file order
+    private static void merge(List<ShardTask> shards, WordDictionary dictionary, EdgeCounter edges) {
+        int previousLast = -1;
+        boolean beforeFirstWord = true;
+        boolean leadingWhitespace = false;
+        for (ShardTask shard : shards) {
+            if (beforeFirstWord) {
+                // Shards do not emit the leading empty word themselves, since the whitespace
+                // that starts the text may end up in a shard other than the first word's
+                leadingWhitespace |= shard.whitespaceBeforeFirstWord;
+                if (shard.collector.first() >= 0) {
+                    if (leadingWhitespace) {
+                        previousLast = dictionary.intern("");
+                    }
+                    beforeFirstWord = false;
+                }
+            }
+
+            WordDictionary local = shard.dictionary;
+            int[] remap = new int[local.size()];
+            for (int id = 0; id < remap.length; id++) {
+                remap[id] = dictionary.intern(local.wordOf(id));
+            }
+            edges.addAll(shard.collector.edges(), remap);
+
+            if (shard.collector.first() >= 0) {
+                if (previousLast >= 0) {
+                    edges.add(previousLast, remap[shard.collector.first()]);
+                }
+                previousLast = remap[shard.collector.last()];
+            }
+        }
+    }
+
+    private static class ShardTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long from;
+        private final long to;
+        private final WordDictionary dictionary = new WordDictionary();
+        private final BigramCollector collector = new BigramCollector(new EdgeCounter());
+        private boolean whitespaceBeforeFirstWord;
+
+        ShardTask(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                CorpusReader reader = new CorpusReader(dictionary);
+                reader.readRange(channel, from, to, false, collector);
+                whitespaceBeforeFirstWord = reader.whitespaceBeforeFirstWord();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Cache of finished query answers (bridge words, shortest paths) keyed by query kind and the
+// two words, so that a repeated hot pair costs one hash lookup. Every answer is stored with the
+// version of the graph snapshot it was computed on and only returned for that version; the
+// first answer stored for a newer version drops everything older, so results never go stale.
+//
+// The cache is split into segments by key hash, each with its own lock. A segment follows
+// W-TinyLFU: new answers enter a small LRU window, and an answer leaving the window only
+// replaces the least recently used answer of the main area if a count-min sketch of recent
+// key frequencies says it is asked for more often. A burst of one-off queries therefore
+// cannot flush the hot pairs out of the cache.
+public class QueryResultCache {
+    public static final byte BRIDGE_WORDS = 1;
+    public static final byte SHORTEST_PATH = 2;
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int maxEntries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    // maxEntries <= 0 disables the cache: nothing is stored and every lookup misses
+    public QueryResultCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        int perSegment = Math.max(2, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    // The answer computed on the given graph version, or null
+    public String get(byte kind, long version, String word1, String word2) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        Key key = new Key(kind, word1, word2);
+        String result = segment(key).get(key, version);
+        if (result != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return result;
+    }
+
+    public void put(byte kind, long version, String word1, String word2, String result) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        Key key = new Key(kind, word1, word2);
+        if (!segment(key).put(key, version, result)) {
+            rejected.increment();
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("entries=%d hits=%d misses=%d hitRate=%.3f rejected=%d",
+                size(), hits(), misses(), hitRate(), rejected.sum());
+    }
+
+    private Segment segment(Key key) {
+        return segments[(key.hash ^ (key.hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static final class Key {
+        private final byte kind;
+        private final String word1;
+        private final String word2;
+        private final int hash;
+
+        Key(byte kind, String word1, String word2) {
+            this.kind = kind;
+            this.word1 = word1;
+            this.word2 = word2;
+            this.hash = (kind * 31 + word1.hashCode()) * 0x9E3779B1 + word2.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return kind == other.kind && word1.equals(other.word1) && word2.equals(other.word2);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Segment {
+        private final int windowCapacity;
+        private final int mainCapacity;
+        // Both in access order: the eldest entry is the least recently used
+        private final LinkedHashMap<Key, String> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<Key, String> main = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+        private long version = -1;
+
+        Segment(int capacity) {
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.mainCapacity = Math.max(1, capacity - windowCapacity);
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        synchronized String get(Key key, long queryVersion) {
+            sketch.increment(key.hash);
+            if (queryVersion != version) {
+                return null;
+            }
+            String result = main.get(key);
+            return result != null ? result : window.get(key);
+        }
+
+        // False if an answer was dropped: this one for being of an older version, or the one
+        // leaving the window for losing admission
+        synchronized boolean put(Key key, long resultVersion, String result) {
+            if (resultVersion < version) {
+                return false;
+            }
+            if (resultVersion > version) {
+                window.clear();
+                main.clear();
+                version = resultVersion;
+            }
+            if (main.containsKey(key)) {
+                main.put(key, result);
+                return true;
+            }
+            window.put(key, result);
+            if (window.size() <= windowCapacity) {
+                return true;
+            }
+            // The window overflowed: its eldest entry competes for a place in the main area
+            Iterator<Map.Entry<Key, String>> eldestWindow = window.entrySet().iterator();
+            Map.Entry<Key, String> candidate = eldestWindow.next();
+            eldestWindow.remove();
+            if (main.size() < mainCapacity) {
+                main.put(candidate.getKey(), candidate.getValue());
+                return true;
+            }
+            Iterator<Map.Entry<Key, String>> eldestMain = main.entrySet().iterator();
+            Key victim = eldestMain.next().getKey();
+            if (sketch.frequency(candidate.getKey().hash) > sketch.frequency(victim.hash)) {
+                eldestMain.remove();
+                main.put(candidate.getKey(), candidate.getValue());
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void clear() {
+            window.clear();
+            main.clear();
+        }
+
+        synchronized int size() {
+            return window.size() + main.size();
+        }
+    }
+
+    // Count-min sketch of key frequencies with four rows. Counters saturate at 15 and are all
+    // halved once 10 * capacity increments have been counted, so old popularity fades.
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {0x97CB3127, 0xB2B4BB5B, 0x2D5E5C7B, 0x7F4A7C15};
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] rows = new byte[SEEDS.length][];
+        private final int mask;
+        private final int resetAfter;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new byte[width];
+            }
+            this.mask = width - 1;
+            this.resetAfter = 10 * Math.max(16, capacity);
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < rows.length; i++) {
+                int slot = index(hash, i);
+                if (rows[i][slot] < MAX_COUNT) {
+                    rows[i][slot]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= resetAfter) {
+                for (byte[] row : rows) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < rows.length; i++) {
+                frequency = Math.min(frequency, rows[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            return (h ^ (h >>> 15)) & mask;
+        }
+    }
+}
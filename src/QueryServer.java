@@ -0,0 +1,327 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Answers queries against one loaded WordGraph over TCP, for scripts and load generators that
+// cannot drive the interactive menu. The protocol is line based: every request is one line
+//
+//     bridge WORD1 WORD2      queryBridgeWords
+//     text SOME TEXT ...      generateNewText
+//     path WORD1 WORD2        calcShortestPath
+//     walk [SEED]             randomWalk, reproducible when a seed is given
+//     ping
+//
+// and gets one JSON line back, {"ok":true,"result":"..."} or {"ok":false,"error":"..."}.
+// Clients may pipeline: requests of a connection run concurrently, but their responses are
+// written in request order. Every request runs on its own virtual thread when the JVM has them
+// (Java 21+) and on a cached thread pool otherwise. A request holds one of maxInFlight permits
+// shared by all connections from the moment it is read until its response has been written, so
+// a client that pipelines without reading its responses stalls its own reader once the permits
+// are used up, and TCP flow control pushes back on it instead of answers piling up in memory.
+public class QueryServer implements Closeable {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    // Marks the end of a connection's response queue
+    private static final CompletableFuture<String> END = CompletableFuture.completedFuture(null);
+
+    private final WordGraph wordGraph;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final AtomicLong requestsRead = new AtomicLong();
+    // Open connections, so that close can end them
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    // Listens on the loopback interface; port 0 picks a free port (see port())
+    public QueryServer(WordGraph wordGraph, int port, int maxInFlight) throws IOException {
+        this.wordGraph = wordGraph;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.executor = newThreadPerTaskExecutor();
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Request lines taken off all connections so far
+    long requestsRead() {
+        return requestsRead.get();
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() where the runtime has it; looked up
+    // reflectively because the code is compiled for Java 8
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "query-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Accepts connections until the server is closed
+    public void serve() throws IOException {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                throw e;
+            }
+            connections.add(socket);
+            try {
+                if (closed) {
+                    throw new RejectedExecutionException();
+                }
+                executor.execute(() -> handle(socket));
+            } catch (RejectedExecutionException e) {
+                // Accepted while closing
+                closeQuietly(socket);
+                return;
+            }
+        }
+    }
+
+    // Reads the requests of one connection, starting each as soon as a slot is free, while a
+    // second thread writes the responses in order
+    private void handle(Socket socket) {
+        BlockingQueue<CompletableFuture<String>> responses = new LinkedBlockingQueue<>();
+        try {
+            socket.setTcpNoDelay(true);
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 16 << 10);
+            executor.execute(() -> writeResponses(socket, out, responses));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                inFlight.acquire();
+                requestsRead.incrementAndGet();
+                String request = line;
+                CompletableFuture<String> response = new CompletableFuture<>();
+                responses.add(response);
+                try {
+                    executor.execute(() -> {
+                        try {
+                            response.complete(answer(request));
+                        } catch (Throwable e) {
+                            response.complete(error(e.toString()));
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    response.complete(error("Server is shutting down"));
+                }
+            }
+        } catch (IOException e) {
+            // Client went away; the writer closes the socket
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            responses.add(END);
+        }
+    }
+
+    // Writes the responses in request order, giving back each request's permit once its response
+    // is written
+    private void writeResponses(Socket socket, Writer out, BlockingQueue<CompletableFuture<String>> responses) {
+        boolean ended = false;
+        try {
+            while (true) {
+                CompletableFuture<String> next = responses.poll();
+                if (next == null) {
+                    // Nothing ready to batch up: push what was written so far to the client
+                    out.flush();
+                    next = responses.take();
+                }
+                if (next == END) {
+                    ended = true;
+                    break;
+                }
+                try {
+                    out.write(next.join());
+                    out.write('\n');
+                } finally {
+                    inFlight.release();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Client went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(socket);
+            if (!ended) {
+                discardResponses(responses);
+            }
+        }
+    }
+
+    private void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        connections.remove(socket);
+    }
+
+    // After the connection failed: gives back the permits of responses that will never be written.
+    // Closing the socket makes the reader stop and queue END, which ends the loop.
+    private void discardResponses(BlockingQueue<CompletableFuture<String>> responses) {
+        boolean interrupted = false;
+        while (true) {
+            CompletableFuture<String> next;
+            try {
+                next = responses.take();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                continue;
+            }
+            if (next == END) {
+                break;
+            }
+            next.whenComplete((response, failure) -> inFlight.release());
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The JSON response line for one request line
+    String answer(String request) {
+        String line = request.trim();
+        int space = line.indexOf(' ');
+        String command = space < 0 ? line : line.substring(0, space);
+        String argument = space < 0 ? "" : line.substring(space + 1).trim();
+        String[] words = argument.isEmpty() ? new String[0] : argument.split("\\s+");
+        switch (command.toLowerCase()) {
+            case "bridge":
+                if (words.length != 2) {
+                    return error("Usage: bridge WORD1 WORD2");
+                }
+                return result(wordGraph.queryBridgeWords(words[0].toLowerCase(), words[1].toLowerCase()));
+            case "text":
+                return result(wordGraph.generateNewText(argument));
+            case "path":
+                if (words.length != 2) {
+                    return error("Usage: path WORD1 WORD2");
+                }
+                return result(wordGraph.calcShortestPath(words[0].toLowerCase(), words[1].toLowerCase()));
+            case "walk":
+                if (words.length > 1) {
+                    return error("Usage: walk [SEED]");
+                }
+                try {
+                    SplittableRandom random = words.length == 0 ? new SplittableRandom() : new SplittableRandom(Long.parseLong(words[0]));
+                    return result(wordGraph.randomWalk(random));
+                } catch (NumberFormatException e) {
+                    return error("Seed is not a number: " + words[0]);
+                }
+            case "ping":
+                return result("pong");
+            default:
+                return error("Unknown request: " + command);
+        }
+    }
+
+    private static String result(String value) {
+        return "{\"ok\":true,\"result\":" + quote(value) + "}";
+    }
+
+    private static String error(String message) {
+        return "{\"ok\":false,\"error\":" + quote(message) + "}";
+    }
+
+    static String quote(String value) {
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    // Stops accepting connections and reading requests, and lets the requests already read
+    // finish. Connections whose responses are still not written after 10 s, because their
+    // client does not read them, are closed.
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        // The readers see the end of their input, so idle clients do not hold up the shutdown
+        for (Socket socket : connections) {
+            try {
+                socket.shutdownInput();
+            } catch (IOException e) {
+                closeQuietly(socket);
+            }
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                for (Socket socket : connections) {
+                    closeQuietly(socket);
+                }
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+// Random walks over one graph snapshot. Every node has an alias table over its out-edges
+// (Vose's method), so picking the next word with probability proportional to the bigram
+// count costs O(1) whatever the out-degree. A walk starts at a uniformly chosen word and stops
+// at a dead end or right after following an edge for the second time.
+public class RandomWalkEngine {
+    // Walks handed to one fork-join task
+    static final int WALKS_PER_TASK = 1024;
+
+    private final CsrGraph graph;
+    // For out-edge e of node u: keep e with probability keep[e], otherwise take the edge at
+    // offset alias[e] within u's row
+    private final double[] keep;
+    private final int[] alias;
+
+    public RandomWalkEngine(CsrGraph graph) {
+        this.graph = graph;
+        this.keep = new double[graph.edgeCount()];
+        this.alias = new int[graph.edgeCount()];
+        int[] small = new int[16];
+        int[] large = new int[16];
+        double[] scaled = new double[16];
+        for (int u = 0; u < graph.nodeCount(); u++) {
+            int degree = graph.outDegree(u);
+            if (degree > small.length) {
+                small = new int[degree];
+                large = new int[degree];
+                scaled = new double[degree];
+            }
+            buildAliasTable(u, degree, small, large, scaled);
+        }
+    }
+
+    private void buildAliasTable(int node, int degree, int[] small, int[] large, double[] scaled) {
+        int start = graph.outStart(node);
+        long total = 0;
+        for (int i = 0; i < degree; i++) {
+            total += graph.weight(start + i);
+        }
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < degree; i++) {
+            scaled[i] = (double) graph.weight(start + i) * degree / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            keep[start + less] = scaled[less];
+            alias[start + less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // Whatever is left is 1.0 up to rounding
+        while (largeCount > 0) {
+            keep[start + large[--largeCount]] = 1.0;
+        }
+        while (smallCount > 0) {
+            keep[start + small[--smallCount]] = 1.0;
+        }
+    }
+
+    public CsrGraph graph() {
+        return graph;
+    }
+
+    // Picks an out-edge of a node with at least one successor
+    public int nextEdge(int node, SplittableRandom random) {
+        int start = graph.outStart(node);
+        int edge = start + random.nextInt(graph.outDegree(node));
+        return random.nextDouble() < keep[edge] ? edge : start + alias[edge];
+    }
+
+    // One walk as the words joined by spaces, empty if the graph has no words; visitedEdges is
+    // scratch space reused by the caller
+    public String walk(SplittableRandom random, IntHashSet visitedEdges) {
+        if (graph.nodeCount() == 0) {
+            return "";
+        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = Metrics.ENABLED ? Metrics.allocatedBytes() : 0;
+        visitedEdges.clear();
+        int currentNode = random.nextInt(graph.nodeCount());
+        StringBuilder result = new StringBuilder();
+        result.append(graph.word(currentNode));
+        int steps = 0;
+        while (graph.outDegree(currentNode) > 0) {
+            steps++;
+            int edge = nextEdge(currentNode, random);
+            currentNode = graph.target(edge);
+            result.append(' ').append(graph.word(currentNode));
+            if (!visitedEdges.add(edge)) {
+                break;
+            }
+        }
+        String walk = result.toString();
+        if (Metrics.ENABLED) {
+            Metrics.RANDOM_WALK.record(start, allocated, steps + 1L, steps);
+        }
+        return walk;
+    }
+
+    // Runs count walks on the pool. Each block of walks gets a generator split off a root seeded
+    // with seed, in block order, so the set of walks produced is reproducible. The consumer is
+    // called concurrently from pool threads and must be thread-safe.
+    public void walks(long count, long seed, ForkJoinPool pool, Consumer<String> consumer) {
+        SplittableRandom root = new SplittableRandom(seed);
+        int blocks = (int) ((count + WALKS_PER_TASK - 1) / WALKS_PER_TASK);
+        WalkBlock[] tasks = new WalkBlock[blocks];
+        for (int b = 0; b < blocks; b++) {
+            int walks = (int) Math.min(WALKS_PER_TASK, count - (long) b * WALKS_PER_TASK);
+            tasks[b] = new WalkBlock(walks, root.split(), consumer);
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    private class WalkBlock extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int walks;
+        private final SplittableRandom random;
+        private final Consumer<String> consumer;
+
+        WalkBlock(int walks, SplittableRandom random, Consumer<String> consumer) {
+            this.walks = walks;
+            this.random = random;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            IntHashSet visitedEdges = new IntHashSet();
+            for (int i = 0; i < walks; i++) {
+                consumer.accept(walk(random, visitedEdges));
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// Answers "can word u reach word v?" on one graph snapshot, mostly in O(1). The strongly
+// connected components are found with an iterative Tarjan search (no recursion, so long word
+// chains cannot overflow the stack) and contracted into a DAG. Tarjan numbers the components in
+// reverse topological order, so a component can only reach components with a smaller id. On
+// top of that every component gets labels from one depth-first pass over the DAG:
+//
+//  - [pre, post] of the DFS spanning forest: v inside u's tree interval means u reaches v;
+//  - [low, post] with low the smallest post number below u: if u reaches v, v's interval lies
+//    inside u's, so a pair whose intervals do not nest is unreachable.
+//
+// Only pairs that pass every test without being decided fall back to a DFS over the DAG, which
+// prunes every branch the same tests rule out. Answers are always exact.
+public class ReachabilityIndex {
+    private final CsrGraph graph;
+    // Component of each node; component ids are in reverse topological order
+    private final int[] component;
+    private final int componentCount;
+    // Condensation DAG in CSR form, rows sorted and free of duplicates
+    private final int[] dagOffsets;
+    private final int[] dagTargets;
+    private final int[] pre;
+    private final int[] post;
+    private final int[] low;
+    private final LongAdder searches;
+
+    private ReachabilityIndex(CsrGraph graph, int[] component, int componentCount, int[] dagOffsets, int[] dagTargets,
+                              int[] pre, int[] post, int[] low, LongAdder searches) {
+        this.graph = graph;
+        this.component = component;
+        this.componentCount = componentCount;
+        this.dagOffsets = dagOffsets;
+        this.dagTargets = dagTargets;
+        this.pre = pre;
+        this.post = post;
+        this.low = low;
+        this.searches = searches;
+    }
+
+    public static ReachabilityIndex build(CsrGraph graph) {
+        int n = graph.nodeCount();
+        int[] component = new int[n];
+        int componentCount = stronglyConnectedComponents(graph, component);
+
+        // Condensation: one edge per pair of distinct components joined by some word edge
+        int[] dagOffsets = new int[componentCount + 1];
+        for (int u = 0; u < n; u++) {
+            for (int e = graph.outStart(u); e < graph.outEnd(u); e++) {
+                if (component[graph.target(e)] != component[u]) {
+                    dagOffsets[component[u] + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < componentCount; c++) {
+            dagOffsets[c + 1] += dagOffsets[c];
+        }
+        int[] dagTargets = new int[dagOffsets[componentCount]];
+        int[] next = Arrays.copyOf(dagOffsets, componentCount);
+        for (int u = 0; u < n; u++) {
+            for (int e = graph.outStart(u); e < graph.outEnd(u); e++) {
+                int d = component[graph.target(e)];
+                if (d != component[u]) {
+                    dagTargets[next[component[u]]++] = d;
+                }
+            }
+        }
+        int edges = 0;
+        for (int c = 0; c < componentCount; c++) {
+            int start = dagOffsets[c];
+            int end = dagOffsets[c + 1];
+            Arrays.sort(dagTargets, start, end);
+            dagOffsets[c] = edges;
+            for (int i = start; i < end; i++) {
+                if (i == start || dagTargets[i] != dagTargets[i - 1]) {
+                    dagTargets[edges++] = dagTargets[i];
+                }
+            }
+        }
+        dagOffsets[componentCount] = edges;
+        dagTargets = Arrays.copyOf(dagTargets, edges);
+
+        int[] pre = new int[componentCount];
+        int[] post = new int[componentCount];
+        int[] low = new int[componentCount];
+        label(componentCount, dagOffsets, dagTargets, pre, post, low);
+        return new ReachabilityIndex(graph, component, componentCount, dagOffsets, dagTargets, pre, post, low, new LongAdder());
+    }
+
+    // Iterative Tarjan; fills component and returns the number of components
+    private static int stronglyConnectedComponents(CsrGraph graph, int[] component) {
+        int n = graph.nodeCount();
+        // index[v] is the 1-based discovery number, 0 while v is unvisited
+        int[] index = new int[n];
+        int[] lowLink = new int[n];
+        int[] stack = new int[n];
+        int[] callNode = new int[n];
+        int[] callEdge = new int[n];
+        Arrays.fill(component, -1);
+        int counter = 0;
+        int count = 0;
+        int stackSize = 0;
+        for (int root = 0; root < n; root++) {
+            if (index[root] != 0) {
+                continue;
+            }
+            int depth = 0;
+            index[root] = lowLink[root] = ++counter;
+            stack[stackSize++] = root;
+            callNode[0] = root;
+            callEdge[0] = graph.outStart(root);
+            depth++;
+            while (depth > 0) {
+                int v = callNode[depth - 1];
+                int e = callEdge[depth - 1];
+                if (e < graph.outEnd(v)) {
+                    callEdge[depth - 1] = e + 1;
+                    int w = graph.target(e);
+                    if (index[w] == 0) {
+                        index[w] = lowLink[w] = ++counter;
+                        stack[stackSize++] = w;
+                        callNode[depth] = w;
+                        callEdge[depth] = graph.outStart(w);
+                        depth++;
+                    } else if (component[w] < 0 && index[w] < lowLink[v]) {
+                        // w is still on the stack
+                        lowLink[v] = index[w];
+                    }
+                    continue;
+                }
+                depth--;
+                if (lowLink[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        component[w] = count;
+                    } while (w != v);
+                    count++;
+                }
+                if (depth > 0) {
+                    int parent = callNode[depth - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                }
+            }
+        }
+        return count;
+    }
+
+    // One DFS over the DAG, roots taken in topological order (highest id first)
+    private static void label(int componentCount, int[] dagOffsets, int[] dagTargets, int[] pre, int[] post, int[] low) {
+        boolean[] visited = new boolean[componentCount];
+        int[] callNode = new int[componentCount];
+        int[] callEdge = new int[componentCount];
+        int preCounter = 0;
+        int postCounter = 0;
+        for (int root = componentCount - 1; root >= 0; root--) {
+            if (visited[root]) {
+                continue;
+            }
+            visited[root] = true;
+            pre[root] = preCounter++;
+            low[root] = Integer.MAX_VALUE;
+            callNode[0] = root;
+            callEdge[0] = dagOffsets[root];
+            int depth = 1;
+            while (depth > 0) {
+                int c = callNode[depth - 1];
+                int e = callEdge[depth - 1];
+                if (e < dagOffsets[c + 1]) {
+                    callEdge[depth - 1] = e + 1;
+                    int d = dagTargets[e];
+                    if (!visited[d]) {
+                        visited[d] = true;
+                        pre[d] = preCounter++;
+                        low[d] = Integer.MAX_VALUE;
+                        callNode[depth] = d;
+                        callEdge[depth] = dagOffsets[d];
+                        depth++;
+                    } else {
+                        // In a DAG a visited child is already finished
+                        low[c] = Math.min(low[c], low[d]);
+                    }
+                    continue;
+                }
+                depth--;
+                post[c] = postCounter++;
+                low[c] = Math.min(low[c], post[c]);
+                if (depth > 0) {
+                    int parent = callNode[depth - 1];
+                    low[parent] = Math.min(low[parent], low[c]);
+                }
+            }
+        }
+    }
+
+    // The index of next, reusing this one when next only adds edges (or weight) between known words
+    // that do not change which words reach which, e.g. repeated bigrams. The check is one linear
+    // merge over the rows, far cheaper than the component search. Anything else is built from
+    // scratch: in particular any append that brings a new word, since labelling it would mean
+    // relabelling every component that reaches it.
+    public ReachabilityIndex update(CsrGraph next) {
+        if (next == graph) {
+            return this;
+        }
+        if (next.nodeCount() != graph.nodeCount()) {
+            return build(next);
+        }
+        for (int u = 0; u < graph.nodeCount(); u++) {
+            int oldEdge = graph.outStart(u);
+            int oldEnd = graph.outEnd(u);
+            for (int e = next.outStart(u); e < next.outEnd(u); e++) {
+                int v = next.target(e);
+                while (oldEdge < oldEnd && graph.target(oldEdge) < v) {
+                    // An edge went away: not an append
+                    return build(next);
+                }
+                if (oldEdge < oldEnd && graph.target(oldEdge) == v) {
+                    oldEdge++;
+                } else if (!canReach(u, v)) {
+                    return build(next);
+                }
+            }
+            if (oldEdge < oldEnd) {
+                return build(next);
+            }
+        }
+        return new ReachabilityIndex(next, component, componentCount, dagOffsets, dagTargets, pre, post, low, searches);
+    }
+
+    public CsrGraph graph() {
+        return graph;
+    }
+
+    public int componentCount() {
+        return componentCount;
+    }
+
+    // Component id of the node; ids are in reverse topological order of the condensation
+    public int component(int node) {
+        return component[node];
+    }
+
+    // Number of queries that were not decided by the labels and needed a DAG search
+    public long searchCount() {
+        return searches.sum();
+    }
+
+    public boolean canReach(int source, int target) {
+        int from = component[source];
+        int to = component[target];
+        if (from == to) {
+            return true;
+        }
+        if (!labelsAllow(from, to)) {
+            return false;
+        }
+        if (treeReaches(from, to)) {
+            return true;
+        }
+        searches.increment();
+        return search(from, to);
+    }
+
+    // The O(1) label test alone, never a search: false only if source certainly cannot reach target
+    public boolean mayReach(int source, int target) {
+        int from = component[source];
+        int to = component[target];
+        return from == to || labelsAllow(from, to);
+    }
+
+    // False only if component from certainly cannot reach component to
+    private boolean labelsAllow(int from, int to) {
+        return to < from && low[from] <= low[to] && post[to] <= post[from];
+    }
+
+    private boolean treeReaches(int from, int to) {
+        return pre[from] <= pre[to] && post[to] <= post[from];
+    }
+
+    // Depth-first search over the DAG from from, skipping components that cannot reach to
+    private boolean search(int from, int to) {
+        try (TraversalWorkspace visited = TraversalWorkspace.acquire(componentCount)) {
+            // Every component is pushed at most once
+            int[] stack = visited.stack(componentCount);
+            int size = 0;
+            stack[size++] = from;
+            visited.visit(from);
+            while (size > 0) {
+                int c = stack[--size];
+                for (int e = dagOffsets[c]; e < dagOffsets[c + 1]; e++) {
+                    int d = dagTargets[e];
+                    if (d == to || (labelsAllow(d, to) && treeReaches(d, to))) {
+                        return true;
+                    }
+                    if (labelsAllow(d, to) && visited.visit(d)) {
+                        stack[size++] = d;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
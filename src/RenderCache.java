@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// On-disk cache of rendered images, content-addressed: the file name is a hash of what was
+// drawn (graph fingerprint, view, highlighted edge ids and image format), so a repeated query
+// finds its image without rendering, also after a restart. Bounded by total file size with
+// least-recently-used eviction; files already in the directory are adopted oldest first.
+public class RenderCache {
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> files;
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    public RenderCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.files = new LinkedHashMap<>(16, 0.75f, true);
+        Files.createDirectories(directory);
+        List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file) && !file.getFileName().toString().contains(".tmp")) {
+                    existing.add(file);
+                }
+            }
+        }
+        existing.sort((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()));
+        for (Path file : existing) {
+            add(file.getFileName().toString(), Files.size(file));
+        }
+        evict(null);
+    }
+
+    // Name of the image of the view of graph with the given edges highlighted; highlightedEdges
+    // must be sorted
+    public static String key(CsrGraph graph, String view, int[] highlightedEdges, String imageFormat) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] number = new byte[8];
+        putLong(number, graph.fingerprint());
+        digest.update(number);
+        digest.update(view.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        for (int edge : highlightedEdges) {
+            putLong(number, edge);
+            digest.update(number, 4, 4);
+        }
+        byte[] hash = digest.digest();
+        StringBuilder name = new StringBuilder(40 + imageFormat.length());
+        for (int i = 0; i < 20; i++) {
+            name.append(Character.forDigit((hash[i] >> 4) & 15, 16)).append(Character.forDigit(hash[i] & 15, 16));
+        }
+        return name.append('.').append(imageFormat).toString();
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    // The cached image, or null if it has not been rendered (or was evicted or deleted)
+    public synchronized Path get(String key) {
+        Long size = files.get(key);
+        if (size != null) {
+            Path file = directory.resolve(key);
+            if (Files.exists(file)) {
+                hits++;
+                return file;
+            }
+            files.remove(key);
+            bytes -= size;
+        }
+        misses++;
+        return null;
+    }
+
+    // Where a new image for key should be rendered before it is handed to put
+    public Path temporaryFile(String key) {
+        return directory.resolve(Thread.currentThread().getId() + ".tmp." + key);
+    }
+
+    // Moves a freshly rendered image into the cache and returns its final location
+    public synchronized Path put(String key, Path rendered) throws IOException {
+        Path file = directory.resolve(key);
+        Files.move(rendered, file, StandardCopyOption.REPLACE_EXISTING);
+        add(key, Files.size(file));
+        evict(key);
+        return file;
+    }
+
+    private void add(String key, long size) {
+        Long previous = files.put(key, size);
+        if (previous != null) {
+            bytes -= previous;
+        }
+        bytes += size;
+    }
+
+    // Deletes least recently used images until the cache fits, keeping the one named keep
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> eldest = files.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(directory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                System.err.println("Could not evict cached image " + entry.getKey() + ": " + e.getMessage());
+            }
+            bytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return files.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "images=" + files.size() + " bytes=" + bytes + " hits=" + hits + " misses=" + misses;
+    }
+
+    private static void putLong(byte[] bytes, long value) {
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (value >>> (56 - 8 * i));
+        }
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+// Appends result lines (random walks, generated text, ...) to a file from a background thread.
+// Producers only enqueue; when the bounded queue is full they block until the writer catches up,
+// or fail once the writer has stopped on an I/O error.
+// The writer drains the queue in batches and writes through a FileChannel once a batch reaches
+// the configured size or age, optionally gzip-compressed, rotating to a new file by size.
+public class ResultSink implements Consumer<String>, Closeable {
+    private static final String END = new String("end of results");
+
+    public static class Config {
+        private final String filePath;
+        private int queueCapacity = 8192;
+        private int flushBytes = 256 << 10;
+        private long flushIntervalMillis = 200;
+        private long maxFileBytes = Long.MAX_VALUE;
+        private boolean gzip;
+
+        public Config(String filePath) {
+            this.filePath = filePath;
+        }
+
+        // Lines that may wait in memory before producers are blocked
+        public Config queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        // A batch is written as soon as it holds this many bytes...
+        public Config flushBytes(int flushBytes) {
+            this.flushBytes = flushBytes;
+            return this;
+        }
+
+        // ...or when its oldest line has waited this long
+        public Config flushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+            return this;
+        }
+
+        // Start a new file (path.1, path.2, ...) once the current one reaches this size
+        public Config maxFileBytes(long maxFileBytes) {
+            this.maxFileBytes = maxFileBytes;
+            return this;
+        }
+
+        public Config gzip(boolean gzip) {
+            this.gzip = gzip;
+            return this;
+        }
+    }
+
+    private final Config config;
+    private final BlockingQueue<String> queue;
+    private final Thread writer;
+    private final byte[] separator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private ByteBuffer batch;
+    private FileChannel channel;
+    private OutputStream gzipStream;
+    private int fileIndex;
+    // Lines in the current batch, lines written to a gzip stream but not yet flushed to the file,
+    // and lines accepted / handed to the file so far
+    private int batchLines;
+    private long unflushedLines;
+    private long submitted;
+    private long written;
+    private volatile boolean flushRequested;
+    private volatile IOException failure;
+
+    public ResultSink(Config config) throws IOException {
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<>(config.queueCapacity);
+        this.batch = ByteBuffer.allocateDirect(config.flushBytes + 4096);
+        openFile();
+        this.writer = new Thread(this::run, "result-sink-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Enqueues one line, blocking while the queue is full
+    @Override
+    public void accept(String line) {
+        try {
+            enqueue(line);
+            synchronized (this) {
+                submitted++;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Result sink failed: " + e.getMessage(), e);
+        }
+    }
+
+    // Waits for room in the queue, giving up once the writer has stopped: nothing would drain
+    // the queue any more
+    private void enqueue(String line) throws IOException {
+        try {
+            do {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (!writer.isAlive()) {
+                    throw new IOException("Result sink is closed");
+                }
+            } while (!queue.offer(line, config.flushIntervalMillis, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queueing a result", e);
+        }
+    }
+
+    // Blocks until every line accepted so far has been handed to the file
+    public void flush() throws IOException {
+        synchronized (this) {
+            long target = submitted;
+            while (written < target && failure == null && writer.isAlive()) {
+                // Asked again on every round: the writer may have taken the request before our
+                // last lines were out of the queue
+                flushRequested = true;
+                try {
+                    wait(config.flushIntervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while flushing results", e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (writer.isAlive() && failure == null) {
+                try {
+                    enqueue(END);
+                } catch (IOException e) {
+                    // The writer stopped; its failure is reported below
+                }
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the result sink", e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void run() {
+        List<String> drained = new ArrayList<>();
+        long batchStarted = 0;
+        try {
+            boolean end = false;
+            while (!end) {
+                long waitMillis = batch.position() == 0 ? config.flushIntervalMillis
+                        : Math.max(1, config.flushIntervalMillis - (System.currentTimeMillis() - batchStarted));
+                String first = queue.poll(waitMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    drained.add(first);
+                    queue.drainTo(drained);
+                }
+                for (String line : drained) {
+                    if (line == END) {
+                        end = true;
+                        break;
+                    }
+                    if (batch.position() == 0) {
+                        batchStarted = System.currentTimeMillis();
+                    }
+                    append(line.getBytes(StandardCharsets.UTF_8));
+                    append(separator);
+                    batchLines++;
+                }
+                drained.clear();
+                boolean flushing = flushRequested;
+                if (end || flushing || batch.position() >= config.flushBytes
+                        || (batch.position() > 0 && System.currentTimeMillis() - batchStarted >= config.flushIntervalMillis)) {
+                    if (flushing) {
+                        flushRequested = false;
+                    }
+                    writeBatch();
+                    if (flushing && gzipStream != null) {
+                        gzipStream.flush();
+                        handedToFile();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            failure = new IOException("Result sink writer interrupted", e);
+        } finally {
+            try {
+                closeFile();
+                handedToFile();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private void append(byte[] bytes) throws IOException {
+        if (batch.remaining() < bytes.length) {
+            writeBatch();
+            if (batch.capacity() < bytes.length) {
+                batch = ByteBuffer.allocateDirect(bytes.length);
+            }
+        }
+        batch.put(bytes);
+    }
+
+    private void writeBatch() throws IOException {
+        batch.flip();
+        if (gzipStream != null) {
+            byte[] bytes = new byte[batch.remaining()];
+            batch.get(bytes);
+            gzipStream.write(bytes);
+        } else {
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+        }
+        batch.clear();
+        unflushedLines += batchLines;
+        batchLines = 0;
+        if (gzipStream == null) {
+            handedToFile();
+        }
+        if (channel.size() >= config.maxFileBytes) {
+            closeFile();
+            handedToFile();
+            fileIndex++;
+            openFile();
+        }
+    }
+
+    // Counts the lines written so far as being in the file; with gzip only once the stream has
+    // been flushed or finished, so that flush() does not return early
+    private void handedToFile() {
+        synchronized (this) {
+            written += unflushedLines;
+            unflushedLines = 0;
+            notifyAll();
+        }
+    }
+
+    private void openFile() throws IOException {
+        Path path = fileIndex == 0 ? Paths.get(config.filePath) : Paths.get(config.filePath + "." + fileIndex);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        gzipStream = config.gzip ? new GZIPOutputStream(Channels.newOutputStream(channel), 64 << 10, true) : null;
+    }
+
+    private void closeFile() throws IOException {
+        if (gzipStream != null) {
+            gzipStream.close();
+        } else if (channel != null) {
+            channel.close();
+        }
+    }
+}
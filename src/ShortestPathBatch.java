@@ -0,0 +1,52 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+
+// Computes the complete shortest-path trees of many sources in parallel. Trees are handed out
+// in completion order, so callers can start consuming results before the slowest source is done.
+public class ShortestPathBatch {
+    private final ShortestPathTreeCache cache;
+
+    public ShortestPathBatch(ShortestPathTreeCache cache) {
+        this.cache = cache;
+    }
+
+    // Submits one task per source to the pool; sources already cached and settled come back first
+    public Iterator<ShortestPathTree> computeAll(CsrGraph graph, int[] sources, ExecutorService pool) {
+        CompletionService<ShortestPathTree> completion = new ExecutorCompletionService<>(pool);
+        for (int source : sources) {
+            completion.submit(() -> {
+                ShortestPathTree tree = cache.get(graph, source);
+                tree.settleAll();
+                return tree;
+            });
+        }
+        return new Iterator<ShortestPathTree>() {
+            private int remaining = sources.length;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public ShortestPathTree next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                try {
+                    return completion.take().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for shortest paths", e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Shortest path computation failed", e.getCause());
+                }
+            }
+        };
+    }
+}
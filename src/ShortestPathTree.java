@@ -0,0 +1,177 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Single-source shortest paths over the weighted word graph (Dijkstra with a binary heap).
+// The search is resumable: asking for a target only settles nodes until that target is final,
+// and later questions about other targets continue the same search. Equal-length paths are
+// all kept implicitly, since a predecessor u of v lies on a shortest path exactly when
+// dist[u] + w(u, v) == dist[v].
+public class ShortestPathTree {
+    // Upper bound on the number of equal-length paths listed for one target
+    public static final int MAX_PATHS = 100;
+
+    private static final int UNREACHED = TraversalWorkspace.UNREACHED;
+
+    private final CsrGraph graph;
+    private final int source;
+    // Distances and settled marks; owned by the tree (not pooled) when it is cached and resumed
+    private final TraversalWorkspace labels;
+    private final LongMinHeap heap;
+    private final boolean borrowed;
+    private int settledCount;
+    private long scannedEdges;
+
+    public ShortestPathTree(CsrGraph graph, int source) {
+        this(graph, source, new TraversalWorkspace(graph.nodeCount()), new LongMinHeap(), false);
+    }
+
+    // A one-shot search on a borrowed workspace, e.g. from TraversalWorkspace.acquire; the tree
+    // must not be used once the workspace is closed
+    ShortestPathTree(CsrGraph graph, int source, TraversalWorkspace workspace) {
+        this(graph, source, workspace, workspace.heap(), true);
+    }
+
+    private ShortestPathTree(CsrGraph graph, int source, TraversalWorkspace labels, LongMinHeap heap, boolean borrowed) {
+        this.graph = graph;
+        this.source = source;
+        this.labels = labels;
+        this.heap = heap;
+        this.borrowed = borrowed;
+        labels.reach(source, 0);
+        heap.add(pack(0, source));
+    }
+
+    public CsrGraph graph() {
+        return graph;
+    }
+
+    public int source() {
+        return source;
+    }
+
+    // Shortest distance from the source, or -1 if the target is unreachable
+    public synchronized int distance(int target) {
+        settleUntil(target);
+        return labels.isSettled(target) ? labels.distance(target) : UNREACHED;
+    }
+
+    // Runs the search to completion, e.g. before answering every target of the source
+    public synchronized void settleAll() {
+        settleUntil(-1);
+    }
+
+    // Number of nodes settled so far
+    public synchronized int settledCount() {
+        return settledCount;
+    }
+
+    // Number of out-edges relaxed so far
+    public synchronized long scannedEdges() {
+        return scannedEdges;
+    }
+
+    // Approximate footprint of the per-node arrays, used to bound ShortestPathTreeCache. The
+    // heap is not counted: it only lives while the search is running and is released at the end.
+    public long estimatedBytes() {
+        return 64 + labels.estimatedBytes();
+    }
+
+    // All shortest paths to the target as node-id arrays from source to target, at most limit
+    // of them; empty if the target is unreachable
+    public synchronized List<int[]> paths(int target, int limit) {
+        if (distance(target) == UNREACHED) {
+            return new ArrayList<>();
+        }
+        return tightPaths(graph, source, target, limit, labels);
+    }
+
+    // The shortest paths to a settled target of any search that leaves exact distances on its
+    // settled nodes, including every node on a shortest path to the target
+    static List<int[]> tightPaths(CsrGraph graph, int source, int target, int limit, TraversalWorkspace labels) {
+        List<int[]> paths = new ArrayList<>();
+        // Depth-first search backwards over tight in-edges; stack[depth] is the node at that
+        // depth counted from the target and cursor[depth] its next in-edge to try
+        int[] stack = new int[16];
+        int[] cursor = new int[16];
+        int depth = 0;
+        stack[0] = target;
+        cursor[0] = target == source ? -1 : graph.inStart(target);
+        while (depth >= 0 && paths.size() < limit) {
+            int v = stack[depth];
+            if (v == source) {
+                int[] path = new int[depth + 1];
+                for (int i = 0; i <= depth; i++) {
+                    path[i] = stack[depth - i];
+                }
+                paths.add(path);
+                depth--;
+                continue;
+            }
+            int in = cursor[depth];
+            int end = graph.inEnd(v);
+            while (in < end && !isTight(graph.inSource(in), v, graph.inWeight(in), labels)) {
+                in++;
+            }
+            if (in >= end) {
+                depth--;
+                continue;
+            }
+            cursor[depth] = in + 1;
+            int u = graph.inSource(in);
+            if (++depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+                cursor = Arrays.copyOf(cursor, depth * 2);
+            }
+            stack[depth] = u;
+            cursor[depth] = graph.inStart(u);
+        }
+        return paths;
+    }
+
+    // Ids of the edges on any of the first limit shortest paths to the target, ascending
+    public synchronized int[] pathEdges(int target, int limit) {
+        IntHashSet edges = new IntHashSet();
+        for (int[] path : paths(target, limit)) {
+            for (int i = 0; i + 1 < path.length; i++) {
+                edges.add(graph.findEdge(path[i], path[i + 1]));
+            }
+        }
+        int[] ids = edges.toArray();
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static boolean isTight(int u, int v, int weight, TraversalWorkspace labels) {
+        return labels.isSettled(u) && labels.distance(u) + weight == labels.distance(v);
+    }
+
+    private void settleUntil(int target) {
+        while (!heap.isEmpty() && (target < 0 || !labels.isSettled(target))) {
+            long top = heap.poll();
+            int node = (int) top;
+            int d = (int) (top >>> 32);
+            if (labels.isSettled(node) || d != labels.distance(node)) {
+                continue;
+            }
+            labels.settle(node);
+            settledCount++;
+            scannedEdges += graph.outDegree(node);
+            for (int e = graph.outStart(node); e < graph.outEnd(node); e++) {
+                int next = graph.target(e);
+                int candidate = d + graph.weight(e);
+                if (!labels.isSettled(next) && (!labels.isReached(next) || candidate < labels.distance(next))) {
+                    labels.reach(next, candidate);
+                    heap.add(pack(candidate, next));
+                }
+            }
+        }
+        if (heap.isEmpty() && !borrowed) {
+            heap.release();
+        }
+    }
+
+    private static long pack(int distance, int node) {
+        return ((long) distance << 32) | node;
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// LRU cache of shortest-path trees keyed by (graph version, source word id), bounded by the
+// approximate memory held by the trees rather than by their number. Trees of an older graph
+// version are dropped as soon as a tree of a newer version is added.
+//
+// Lookups take no lock: they read a concurrent map and stamp the entry with the time of use.
+// Only put and clear are serialised; eviction scans the entries for the oldest stamp, which is
+// cheap for the few dozen trees a memory budget holds.
+public class ShortestPathTreeCache {
+    private final long maxBytes;
+    private final ConcurrentHashMap<Key, Entry> trees = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    // Guarded by this
+    private long bytes;
+    private long newestVersion;
+
+    public ShortestPathTreeCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // Returns the cached tree of the source on this snapshot, creating (but not settling) it if absent
+    public ShortestPathTree get(CsrGraph graph, int source) {
+        ShortestPathTree tree = getIfPresent(graph, source);
+        if (tree == null) {
+            tree = new ShortestPathTree(graph, source);
+            put(tree);
+        }
+        return tree;
+    }
+
+    // The cached tree of the source on this snapshot, or null
+    public ShortestPathTree getIfPresent(CsrGraph graph, int source) {
+        Entry entry = trees.get(new Key(graph.version(), source));
+        if (entry != null && entry.tree.graph() == graph) {
+            entry.lastUsed = System.nanoTime();
+            hits.increment();
+            return entry.tree;
+        }
+        misses.increment();
+        return null;
+    }
+
+    public synchronized void put(ShortestPathTree tree) {
+        long version = tree.graph().version();
+        if (version > newestVersion) {
+            newestVersion = version;
+            for (Iterator<Map.Entry<Key, Entry>> it = trees.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Key, Entry> entry = it.next();
+                if (entry.getKey().version < version) {
+                    bytes -= entry.getValue().bytes;
+                    it.remove();
+                }
+            }
+        }
+        Key key = new Key(version, tree.source());
+        Entry added = new Entry(tree);
+        Entry previous = trees.put(key, added);
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += added.bytes;
+        // Evict least recently used trees, but always keep the one just added
+        while (bytes > maxBytes && trees.size() > 1) {
+            Map.Entry<Key, Entry> eldest = null;
+            for (Map.Entry<Key, Entry> entry : trees.entrySet()) {
+                if (entry.getValue() != added && (eldest == null || entry.getValue().lastUsed < eldest.getValue().lastUsed)) {
+                    eldest = entry;
+                }
+            }
+            bytes -= eldest.getValue().bytes;
+            trees.remove(eldest.getKey());
+        }
+    }
+
+    public synchronized void clear() {
+        trees.clear();
+        bytes = 0;
+    }
+
+    public int size() {
+        return trees.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "trees=" + trees.size() + " bytes=" + bytes + " hits=" + hits.sum() + " misses=" + misses.sum();
+    }
+
+    private static final class Entry {
+        final ShortestPathTree tree;
+        // Footprint when added, so that removal subtracts what was counted
+        final long bytes;
+        volatile long lastUsed = System.nanoTime();
+
+        Entry(ShortestPathTree tree) {
+            this.tree = tree;
+            this.bytes = tree.estimatedBytes();
+        }
+    }
+
+    private static final class Key {
+        private final long version;
+        private final int source;
+
+        Key(long version, int source) {
+            this.version = version;
+            this.source = source;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return version == other.version && source == other.source;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(version) * 31 + source;
+        }
+    }
+}
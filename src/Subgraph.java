@@ -0,0 +1,259 @@
+import java.util.Arrays;
+
+// A bounded piece of a graph snapshot for visualisation: at most maxNodes nodes and maxEdges
+// edges, chosen so that Graphviz finishes in predictable time however large the corpus is.
+// Edges are out-edge ids of the snapshot; nodes are listed in the order they were selected.
+public class Subgraph {
+    private final CsrGraph graph;
+    private final int[] nodes;
+    private final int[] edges;
+    private final boolean truncated;
+    private final String view;
+
+    private Subgraph(CsrGraph graph, int[] nodes, int[] edges, boolean truncated, String view) {
+        this.graph = graph;
+        this.nodes = nodes;
+        this.edges = edges;
+        this.truncated = truncated;
+        this.view = view;
+    }
+
+    public CsrGraph graph() {
+        return graph;
+    }
+
+    public int nodeCount() {
+        return nodes.length;
+    }
+
+    public int node(int i) {
+        return nodes[i];
+    }
+
+    public int edgeCount() {
+        return edges.length;
+    }
+
+    public int edge(int i) {
+        return edges[i];
+    }
+
+    // How the subgraph was selected, e.g. "top 300 1000"; with the graph's fingerprint it
+    // identifies the subgraph, which RenderCache relies on
+    public String view() {
+        return view;
+    }
+
+    // Whether a budget cut anything that the selection would otherwise have included
+    public boolean truncated() {
+        return truncated;
+    }
+
+    // The whole graph when it fits the budgets, otherwise its heaviest edges
+    public static Subgraph fitting(CsrGraph graph, int maxNodes, int maxEdges) {
+        if (graph.nodeCount() <= maxNodes && graph.edgeCount() <= maxEdges) {
+            Selection selection = new Selection(graph, maxNodes, maxEdges);
+            for (int node = 0; node < graph.nodeCount(); node++) {
+                selection.addNode(node);
+            }
+            return selection.withInducedEdges(new int[0], "all");
+        }
+        return topEdges(graph, maxNodes, maxEdges);
+    }
+
+    // The maxEdges heaviest bigrams (ties broken by edge id), skipping edges whose endpoints
+    // would push the node count over maxNodes
+    public static Subgraph topEdges(CsrGraph graph, int maxNodes, int maxEdges) {
+        int[] heaviest = heaviestEdges(graph, maxEdges);
+        Selection selection = new Selection(graph, maxNodes, maxEdges);
+        int[] edges = new int[heaviest.length];
+        int edgeCount = 0;
+        for (int edge : heaviest) {
+            int source = graph.source(edge);
+            int target = graph.target(edge);
+            int missing = (selection.contains(source) ? 0 : 1) + (selection.contains(target) ? 0 : 1);
+            if (source == target && missing == 2) {
+                missing = 1;
+            }
+            if (selection.nodeCount() + missing > maxNodes) {
+                selection.truncated = true;
+                continue;
+            }
+            selection.addNode(source);
+            selection.addNode(target);
+            edges[edgeCount++] = edge;
+        }
+        // Edges between the chosen nodes that were not among the heaviest fill what is left
+        selection.truncated |= graph.edgeCount() > maxEdges;
+        return selection.withInducedEdges(Arrays.copyOf(edges, edgeCount), "top " + maxNodes + " " + maxEdges);
+    }
+
+    // The maxNodes words of highest PageRank and the heaviest edges among them
+    public static Subgraph centralWords(WordCentrality centrality, int maxNodes, int maxEdges) {
+        CsrGraph graph = centrality.graph();
+        Selection selection = new Selection(graph, maxNodes, maxEdges);
+        for (int node : centrality.topByRank(maxNodes)) {
+            selection.addNode(node);
+        }
+        selection.truncated |= graph.nodeCount() > maxNodes;
+        return selection.withInducedEdges(new int[0], "central " + maxNodes + " " + maxEdges);
+    }
+
+    // Nodes within hops edges of center in either direction, nearest first, and the heaviest
+    // edges among them
+    public static Subgraph neighbourhood(CsrGraph graph, int center, int hops, int maxNodes, int maxEdges) {
+        Selection selection = new Selection(graph, maxNodes, maxEdges);
+        selection.addNode(center);
+        int levelStart = 0;
+        for (int hop = 0; hop < hops; hop++) {
+            int levelEnd = selection.nodeCount();
+            for (int i = levelStart; i < levelEnd; i++) {
+                if (selection.full()) {
+                    selection.truncated = true;
+                    break;
+                }
+                selection.addNeighbours(selection.node(i));
+            }
+            levelStart = levelEnd;
+        }
+        return selection.withInducedEdges(new int[0], "neighbourhood " + center + " " + hops + " " + maxNodes + " " + maxEdges);
+    }
+
+    // The path with its immediate context: every path node and edge, then the neighbours of
+    // path nodes joined by the heaviest edges while the budgets allow
+    public static Subgraph pathContext(CsrGraph graph, int[] pathEdges, int maxNodes, int maxEdges) {
+        Selection selection = new Selection(graph, Math.max(maxNodes, pathEdges.length + 1), Math.max(maxEdges, pathEdges.length));
+        for (int edge : pathEdges) {
+            selection.addNode(graph.source(edge));
+            selection.addNode(graph.target(edge));
+        }
+        int pathNodes = selection.nodeCount();
+        for (int i = 0; i < pathNodes && !selection.full(); i++) {
+            selection.addNeighbours(selection.node(i));
+        }
+        return selection.withInducedEdges(pathEdges, "path " + Arrays.toString(pathEdges) + " " + maxNodes + " " + maxEdges);
+    }
+
+    // Ids of the heaviest edges, heaviest first, using a bounded min-heap of (weight, edge) pairs
+    private static int[] heaviestEdges(CsrGraph graph, int limit) {
+        LongMinHeap heap = new LongMinHeap(Math.min(limit, graph.edgeCount()) + 1);
+        for (int edge = 0; edge < graph.edgeCount() && limit > 0; edge++) {
+            heap.add(rank(graph.weight(edge), edge));
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+        int[] edges = new int[heap.size()];
+        for (int i = edges.length - 1; i >= 0; i--) {
+            edges[i] = edgeOf(heap.poll());
+        }
+        return edges;
+    }
+
+    // Orders by weight, then by lower edge id first
+    private static long rank(int weight, int edge) {
+        return ((long) weight << 32) | (~edge & 0xFFFFFFFFL);
+    }
+
+    private static int edgeOf(long rank) {
+        return ~(int) rank;
+    }
+
+    // Nodes picked so far under the budgets
+    private static class Selection {
+        private final CsrGraph graph;
+        private final int maxNodes;
+        private final int maxEdges;
+        private final IntHashSet members = new IntHashSet();
+        private int[] nodes = new int[16];
+        private int nodeCount;
+        private boolean truncated;
+
+        Selection(CsrGraph graph, int maxNodes, int maxEdges) {
+            this.graph = graph;
+            this.maxNodes = maxNodes;
+            this.maxEdges = maxEdges;
+        }
+
+        int nodeCount() {
+            return nodeCount;
+        }
+
+        int node(int i) {
+            return nodes[i];
+        }
+
+        boolean contains(int node) {
+            return members.contains(node);
+        }
+
+        boolean full() {
+            return nodeCount >= maxNodes;
+        }
+
+        void addNode(int node) {
+            if (members.contains(node)) {
+                return;
+            }
+            if (full()) {
+                truncated = true;
+                return;
+            }
+            members.add(node);
+            if (nodeCount == nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodeCount * 2);
+            }
+            nodes[nodeCount++] = node;
+        }
+
+        // Adds the successors and predecessors of node, heaviest connecting edge first
+        void addNeighbours(int node) {
+            int outDegree = graph.outDegree(node);
+            long[] ranked = new long[outDegree + graph.inDegree(node)];
+            int count = 0;
+            for (int e = graph.outStart(node); e < graph.outEnd(node); e++) {
+                ranked[count++] = ((long) graph.weight(e) << 32) | (~graph.target(e) & 0xFFFFFFFFL);
+            }
+            for (int in = graph.inStart(node); in < graph.inEnd(node); in++) {
+                ranked[count++] = ((long) graph.inWeight(in) << 32) | (~graph.inSource(in) & 0xFFFFFFFFL);
+            }
+            Arrays.sort(ranked, 0, count);
+            for (int i = count - 1; i >= 0; i--) {
+                addNode(~(int) ranked[i]);
+            }
+        }
+
+        int[] nodes() {
+            return Arrays.copyOf(nodes, nodeCount);
+        }
+
+        // Closes the selection over the edges between selected nodes. Required edges are always
+        // kept; the rest fill the edge budget heaviest first.
+        Subgraph withInducedEdges(int[] required, String view) {
+            IntHashSet kept = new IntHashSet(required.length);
+            for (int edge : required) {
+                kept.add(edge);
+            }
+            int room = maxEdges - kept.size();
+            LongMinHeap heap = new LongMinHeap(Math.max(room, 0) + 1);
+            for (int i = 0; i < nodeCount; i++) {
+                int u = nodes[i];
+                for (int e = graph.outStart(u); e < graph.outEnd(u); e++) {
+                    if (!members.contains(graph.target(e)) || kept.contains(e)) {
+                        continue;
+                    }
+                    heap.add(rank(graph.weight(e), e));
+                    if (heap.size() > room) {
+                        heap.poll();
+                        truncated = true;
+                    }
+                }
+            }
+            int[] edges = Arrays.copyOf(required, required.length + heap.size());
+            for (int i = edges.length - 1; i >= required.length; i--) {
+                edges[i] = edgeOf(heap.poll());
+            }
+            return new Subgraph(graph, nodes(), edges, truncated, view);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+import java.util.SplittableRandom;
+
+// Inserts a random bridge word between every adjacent pair of words that has one, on a fixed
+// graph snapshot. Whole documents go through BatchQueryRunner's text mode, which gives each line
+// its own generator split off one seeded root in input order.
+public class TextGenerator {
+    private final CsrGraph graph;
+    private final WordDictionary dictionary;
+    private final BridgeWordEngine engine;
+
+    TextGenerator(CsrGraph graph, WordDictionary dictionary, BridgeWordEngine engine) {
+        this.graph = graph;
+        this.dictionary = dictionary;
+        this.engine = engine;
+    }
+
+    // Same output format as WordGraph.generateNewText: the words of the line joined by single spaces
+    public String generate(String line, SplittableRandom random) {
+        StringBuilder result = new StringBuilder(line.length() + 16);
+        int previousId = -1;
+        int length = line.length();
+        int start = 0;
+        boolean first = true;
+        while (start <= length) {
+            int end = start;
+            while (end < length && !CorpusReader.isWhitespace(line.charAt(end))) {
+                end++;
+            }
+            // Like String.split, a leading separator yields an empty first word and trailing ones none
+            if (end > start || (first && end < length)) {
+                String word = line.substring(start, end);
+                int id = dictionary.idOf(word);
+                if (id >= graph.nodeCount()) {
+                    id = -1;
+                }
+                if (!first) {
+                    if (previousId >= 0 && id >= 0) {
+                        int[] bridges = engine.bridgeIds(previousId, id);
+                        if (bridges.length > 0) {
+                            result.append(graph.word(bridges[random.nextInt(bridges.length)])).append(' ');
+                        }
+                    }
+                }
+                result.append(word).append(' ');
+                previousId = id;
+                first = false;
+            }
+            start = end + 1;
+        }
+        if (result.length() > 0) {
+            result.setLength(result.length() - 1);
+        }
+        return result.toString();
+    }
+}
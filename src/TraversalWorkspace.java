@@ -0,0 +1,136 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Scratch state for one graph search: per-node marks and distances, an int stack and a heap.
+// Marks are epoch-stamped, so reset() forgets every node in O(1) instead of clearing arrays
+// sized to the vocabulary, and a steady stream of searches allocates nothing.
+//
+// A node is unreached, reached (has a tentative distance) or settled; mark[v] holds the epoch
+// for reached and the epoch + 1 for settled, and anything older counts as unreached.
+//
+// Workspaces are borrowed from a small shared pool with acquire() and given back by close().
+// The pool is a fixed array of slots claimed with compare-and-set rather than a ThreadLocal, so
+// thousands of short-lived (virtual) threads share a few workspaces instead of each pinning its
+// own, and borrowing and returning allocate nothing.
+public final class TraversalWorkspace implements AutoCloseable {
+    public static final int UNREACHED = -1;
+
+    private static final AtomicReferenceArray<TraversalWorkspace> POOL =
+            new AtomicReferenceArray<>(4 * Runtime.getRuntime().availableProcessors());
+
+    private int[] mark;
+    private int[] distance;
+    private int epoch;
+    private int[] stack = new int[64];
+    private final LongMinHeap heap = new LongMinHeap(64);
+    private final IntHashSet set = new IntHashSet();
+    private final boolean pooled;
+
+    TraversalWorkspace(int nodeCount) {
+        this(nodeCount, false);
+    }
+
+    private TraversalWorkspace(int nodeCount, boolean pooled) {
+        this.mark = new int[nodeCount];
+        this.distance = new int[nodeCount];
+        this.epoch = 2;
+        this.pooled = pooled;
+    }
+
+    // A reset workspace for graphs of up to nodeCount nodes; close it when the search is done
+    public static TraversalWorkspace acquire(int nodeCount) {
+        TraversalWorkspace workspace = null;
+        for (int i = 0; i < POOL.length() && workspace == null; i++) {
+            if (POOL.get(i) != null) {
+                workspace = POOL.getAndSet(i, null);
+            }
+        }
+        if (workspace == null) {
+            return new TraversalWorkspace(nodeCount, true);
+        }
+        if (workspace.mark.length < nodeCount) {
+            // The graph grew; fresh arrays are all unreached
+            workspace.mark = new int[nodeCount];
+            workspace.distance = new int[nodeCount];
+            workspace.epoch = 2;
+        } else {
+            workspace.reset();
+        }
+        return workspace;
+    }
+
+    @Override
+    public void close() {
+        // Dropped when every slot is taken
+        for (int i = 0; pooled && i < POOL.length(); i++) {
+            if (POOL.get(i) == null && POOL.compareAndSet(i, null, this)) {
+                return;
+            }
+        }
+    }
+
+    // Forgets every node, the heap and the set
+    public void reset() {
+        epoch += 2;
+        if (epoch < 0) {
+            Arrays.fill(mark, 0);
+            epoch = 2;
+        }
+        heap.clear();
+        set.clear();
+    }
+
+    public boolean isReached(int node) {
+        return mark[node] >= epoch;
+    }
+
+    public boolean isSettled(int node) {
+        return mark[node] == epoch + 1;
+    }
+
+    // Tentative or final distance, UNREACHED if the node was not reached
+    public int distance(int node) {
+        return mark[node] >= epoch ? distance[node] : UNREACHED;
+    }
+
+    // Records a (better) tentative distance for a node that is not settled
+    public void reach(int node, int d) {
+        mark[node] = epoch;
+        distance[node] = d;
+    }
+
+    public void settle(int node) {
+        mark[node] = epoch + 1;
+    }
+
+    // Marks the node reached; false if it already was
+    public boolean visit(int node) {
+        if (mark[node] >= epoch) {
+            return false;
+        }
+        mark[node] = epoch;
+        return true;
+    }
+
+    // Scratch int array of at least the given length; contents are undefined
+    public int[] stack(int minLength) {
+        if (stack.length < minLength) {
+            stack = new int[Math.max(minLength, stack.length * 2)];
+        }
+        return stack;
+    }
+
+    public LongMinHeap heap() {
+        return heap;
+    }
+
+    // Scratch set, empty after reset
+    public IntHashSet set() {
+        return set;
+    }
+
+    // Footprint of the per-node arrays
+    public long estimatedBytes() {
+        return 8L * mark.length;
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counters for WordGraph.append: how much text went in and how long it took to become visible.
+public class UpdateStats {
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong words = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong lastLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    // lagNanos runs from the append call to the publication of the version containing it
+    void record(int wordCount, long lagNanos) {
+        appends.incrementAndGet();
+        words.addAndGet(wordCount);
+        busyNanos.addAndGet(lagNanos);
+        lastLagNanos.set(lagNanos);
+        maxLagNanos.accumulateAndGet(lagNanos, Math::max);
+    }
+
+    public long getAppendCount() {
+        return appends.get();
+    }
+
+    public long getWordCount() {
+        return words.get();
+    }
+
+    // Words ingested per second of time spent inside append
+    public double getWordsPerSecond() {
+        long nanos = busyNanos.get();
+        return nanos == 0 ? 0 : words.get() * 1e9 / nanos;
+    }
+
+    public long getLastVisibilityLagNanos() {
+        return lastLagNanos.get();
+    }
+
+    public long getMaxVisibilityLagNanos() {
+        return maxLagNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("appends=%d words=%d throughput=%.0f words/s lag(last)=%.3f ms lag(max)=%.3f ms",
+                getAppendCount(), getWordCount(), getWordsPerSecond(),
+                getLastVisibilityLagNanos() / 1e6, getMaxVisibilityLagNanos() / 1e6);
+    }
+}
@@ -0,0 +1,260 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+// Word importance on one graph snapshot: weighted in/out degrees and weighted PageRank. A word
+// passes its rank to its successors in proportion to the bigram counts; words without
+// successors (dangling words, e.g. the last word of the corpus) spread theirs over all words,
+// so the ranks always sum to 1.
+//
+// Power iteration pulls over the in-edges, so every node's new rank is written by exactly one
+// task and no atomics are needed. Nodes are cut into blocks holding about the same number of
+// in-edges; the blocks and their partial sums only depend on the graph, so results are the same
+// whatever the parallelism.
+public class WordCentrality {
+    public static final double DEFAULT_DAMPING = 0.85;
+    // Sum of absolute rank changes over all words below which the iteration stops
+    public static final double DEFAULT_TOLERANCE = 1e-9;
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    // In-edges (plus nodes) handled by one block
+    private static final int BLOCK_WORK = 1 << 16;
+
+    private final CsrGraph graph;
+    private final double[] rank;
+    private final long[] inWeight;
+    private final long[] outWeight;
+    private final int iterations;
+    private final double delta;
+    private final int danglingCount;
+
+    private WordCentrality(CsrGraph graph, double[] rank, long[] inWeight, long[] outWeight, int iterations,
+                           double delta, int danglingCount) {
+        this.graph = graph;
+        this.rank = rank;
+        this.inWeight = inWeight;
+        this.outWeight = outWeight;
+        this.iterations = iterations;
+        this.delta = delta;
+        this.danglingCount = danglingCount;
+    }
+
+    public static WordCentrality compute(CsrGraph graph, ForkJoinPool pool) {
+        return compute(graph, DEFAULT_DAMPING, DEFAULT_TOLERANCE, DEFAULT_MAX_ITERATIONS, pool);
+    }
+
+    public static WordCentrality compute(CsrGraph graph, double damping, double tolerance, int maxIterations, ForkJoinPool pool) {
+        int n = graph.nodeCount();
+        int[] blocks = blocks(graph);
+        int blockCount = blocks.length - 1;
+        long[] inWeight = new long[n];
+        long[] outWeight = new long[n];
+        int[] danglingPerBlock = new int[blockCount];
+        forEachBlock(pool, blockCount, b -> {
+            for (int v = blocks[b]; v < blocks[b + 1]; v++) {
+                long in = 0;
+                for (int e = graph.inStart(v); e < graph.inEnd(v); e++) {
+                    in += graph.inWeight(e);
+                }
+                long out = 0;
+                for (int e = graph.outStart(v); e < graph.outEnd(v); e++) {
+                    out += graph.weight(e);
+                }
+                inWeight[v] = in;
+                outWeight[v] = out;
+                if (out == 0) {
+                    danglingPerBlock[b]++;
+                }
+            }
+        });
+        int danglingCount = 0;
+        for (int count : danglingPerBlock) {
+            danglingCount += count;
+        }
+        if (n == 0) {
+            return new WordCentrality(graph, new double[0], inWeight, outWeight, 0, 0, 0);
+        }
+
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        // rank[u] / outWeight[u]: what u passes along one unit of edge weight
+        double[] share = new double[n];
+        double[] partial = new double[blockCount];
+        Arrays.fill(rank, 1.0 / n);
+        int iterations = 0;
+        double delta = Double.POSITIVE_INFINITY;
+        while (iterations < maxIterations && delta >= tolerance) {
+            double[] current = rank;
+            double[] updated = next;
+            forEachBlock(pool, blockCount, b -> {
+                double dangling = 0;
+                for (int u = blocks[b]; u < blocks[b + 1]; u++) {
+                    if (outWeight[u] == 0) {
+                        share[u] = 0;
+                        dangling += current[u];
+                    } else {
+                        share[u] = current[u] / outWeight[u];
+                    }
+                }
+                partial[b] = dangling;
+            });
+            double base = (1 - damping) / n + damping * sum(partial) / n;
+            forEachBlock(pool, blockCount, b -> {
+                double change = 0;
+                for (int v = blocks[b]; v < blocks[b + 1]; v++) {
+                    double incoming = 0;
+                    for (int e = graph.inStart(v); e < graph.inEnd(v); e++) {
+                        incoming += share[graph.inSource(e)] * graph.inWeight(e);
+                    }
+                    double value = base + damping * incoming;
+                    change += Math.abs(value - current[v]);
+                    updated[v] = value;
+                }
+                partial[b] = change;
+            });
+            delta = sum(partial);
+            next = rank;
+            rank = updated;
+            iterations++;
+        }
+        return new WordCentrality(graph, rank, inWeight, outWeight, iterations, delta, danglingCount);
+    }
+
+    // Block bounds over the node ids, each block covering about BLOCK_WORK in-edges and nodes
+    private static int[] blocks(CsrGraph graph) {
+        int n = graph.nodeCount();
+        long work = (long) graph.edgeCount() + n;
+        int blockCount = (int) Math.max(1, Math.min(n, work / BLOCK_WORK));
+        int[] bounds = new int[blockCount + 1];
+        int v = 0;
+        for (int b = 1; b < blockCount; b++) {
+            long goal = work * b / blockCount;
+            while (v < n && (long) graph.inStart(v) + v < goal) {
+                v++;
+            }
+            bounds[b] = v;
+        }
+        bounds[blockCount] = n;
+        return bounds;
+    }
+
+    private static void forEachBlock(ForkJoinPool pool, int blockCount, IntConsumer body) {
+        if (blockCount == 1) {
+            body.accept(0);
+            return;
+        }
+        pool.submit(() -> IntStream.range(0, blockCount).parallel().forEach(body)).join();
+    }
+
+    // Summed in block order, so the result does not depend on scheduling
+    private static double sum(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    public CsrGraph graph() {
+        return graph;
+    }
+
+    public double rank(int node) {
+        return rank[node];
+    }
+
+    // Sum of the bigram counts into / out of the word
+    public long inWeight(int node) {
+        return inWeight[node];
+    }
+
+    public long outWeight(int node) {
+        return outWeight[node];
+    }
+
+    // Words without successors
+    public int danglingCount() {
+        return danglingCount;
+    }
+
+    public int iterations() {
+        return iterations;
+    }
+
+    // Sum of absolute rank changes in the last iteration
+    public double delta() {
+        return delta;
+    }
+
+    // The k words with the highest rank, highest first
+    public int[] topByRank(int k) {
+        return top(k, node -> rank[node]);
+    }
+
+    public int[] topByInWeight(int k) {
+        return top(k, node -> inWeight[node]);
+    }
+
+    public int[] topByOutWeight(int k) {
+        return top(k, node -> outWeight[node]);
+    }
+
+    // Best k nodes by score, ties to the lower id, from one pass with a bounded min-heap whose
+    // root is the worst node kept so far
+    private int[] top(int k, IntToDoubleFunction score) {
+        int n = graph.nodeCount();
+        int[] heap = new int[Math.max(0, Math.min(k, n))];
+        int size = 0;
+        for (int node = 0; node < n; node++) {
+            if (size < heap.length) {
+                // Sift up
+                int i = size++;
+                while (i > 0 && worse(node, heap[(i - 1) >>> 1], score)) {
+                    heap[i] = heap[(i - 1) >>> 1];
+                    i = (i - 1) >>> 1;
+                }
+                heap[i] = node;
+            } else if (size > 0 && worse(heap[0], node, score)) {
+                siftDown(heap, size, node, score);
+            }
+        }
+        int[] best = new int[size];
+        while (size > 0) {
+            best[--size] = heap[0];
+            if (size > 0) {
+                siftDown(heap, size, heap[size], score);
+            }
+        }
+        return best;
+    }
+
+    private static void siftDown(int[] heap, int size, int node, IntToDoubleFunction score) {
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && worse(heap[child + 1], heap[child], score)) {
+                child++;
+            }
+            if (!worse(heap[child], node, score)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = node;
+    }
+
+    private static boolean worse(int a, int b, IntToDoubleFunction score) {
+        double x = score.applyAsDouble(a);
+        double y = score.applyAsDouble(b);
+        return x < y || (x == y && a > b);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("words=%d iterations=%d delta=%.2e dangling=%d", graph.nodeCount(), iterations, delta, danglingCount);
+    }
+}
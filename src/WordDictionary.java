@@ -0,0 +1,65 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Interned word <-> int id table. Ids are handed out in order of first appearance.
+// A single writer may intern words while other threads look them up; readers holding a graph
+// snapshot must ignore ids at or beyond that snapshot's node count.
+// A dictionary loaded from a snapshot file keeps the file's words in a MappedWordTable (ids
+// 0 .. base.size() - 1) and only words added afterwards in memory.
+public class WordDictionary {
+    private final MappedWordTable base;
+    private final int baseSize;
+    private final Map<String, Integer> ids;
+    private volatile String[] words;
+    private int size;
+
+    public WordDictionary() {
+        this(null);
+    }
+
+    WordDictionary(MappedWordTable base) {
+        this.base = base;
+        this.baseSize = base == null ? 0 : base.size();
+        this.ids = new ConcurrentHashMap<>();
+        this.words = new String[16];
+        this.size = baseSize;
+    }
+
+    // Returns the id of the word, adding it to the dictionary if it is new
+    public int intern(String word) {
+        int id = idOf(word);
+        if (id >= 0) {
+            return id;
+        }
+        String[] table = words;
+        int index = size - baseSize;
+        if (index == table.length) {
+            table = Arrays.copyOf(table, index * 2);
+        }
+        table[index] = word;
+        words = table;
+        ids.put(word, size);
+        return size++;
+    }
+
+    // Returns the id of the word, or -1 if it is not in the dictionary
+    public int idOf(String word) {
+        if (base != null) {
+            int id = base.idOf(word);
+            if (id >= 0) {
+                return id;
+            }
+        }
+        Integer id = ids.get(word);
+        return id == null ? -1 : id;
+    }
+
+    public String wordOf(int id) {
+        return id < baseSize ? base.word(id) : words[id - baseSize];
+    }
+
+    public int size() {
+        return size;
+    }
+}
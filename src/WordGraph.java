@@ -1,47 +1,283 @@
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
 
 
 public class WordGraph {
-    private Map<String, List<String>> adjacencyList;
-    private Map<String, Integer> edgeWeights;
+    // Memory budget for cached shortest-path trees
+    static final long DEFAULT_TREE_CACHE_BYTES = 64L << 20;
+    // Answers of queryBridgeWords and calcShortestPath kept for repeated word pairs; the
+    // wordgraph.resultCacheEntries property overrides it, 0 turns the cache off
+    static final int DEFAULT_RESULT_CACHE_ENTRIES = 16_384;
+    // Slots remembering which sources calcShortestPath was asked about (a power of two)
+    static final int RECENT_SOURCE_SLOTS = 4096;
+
+    private final WordDictionary dictionary;
+    // Writers (build and append) are serialised on this lock. Readers only take it in getGraph,
+    // to publish text that buildGraph added since the last snapshot.
+    private final Object writeLock = new Object();
+    // Bigrams added since the last published snapshot, guarded by writeLock
+    private EdgeCounter pendingEdges;
+    private volatile boolean dirty;
+    // Immutable snapshot that queries run on; replaced as a whole on every change
+    private volatile CsrGraph graph;
+    private final UpdateStats updateStats;
+    private Map<String, List<String>> adjacencyListView;
+    private Map<String, Integer> edgeWeightsView;
+    private CsrGraph viewsGraph;
+    private volatile BridgeWordEngine bridgeWordEngine;
+    // Each per-snapshot cache is built under its own lock, so a slow build (PageRank, Tarjan) only
+    // holds up callers of that same cache
+    private final Object randomWalkEngineLock = new Object();
+    private volatile RandomWalkEngine randomWalkEngine;
+    private final Object reachabilityIndexLock = new Object();
+    private volatile ReachabilityIndex reachabilityIndex;
+    private final Object landmarkOracleLock = new Object();
+    private volatile LandmarkOracle landmarkOracle;
+    private final Object wordCentralityLock = new Object();
+    private volatile WordCentrality wordCentrality;
+    private volatile int landmarkCount = Integer.getInteger("wordgraph.landmarks", 0);
+    private final ShortestPathTreeCache shortestPathTrees;
+    // (version << 32 | source) of recent calcShortestPath sources, by hash of the source
+    private final AtomicLongArray recentSources = new AtomicLongArray(RECENT_SOURCE_SLOTS);
+    private final QueryResultCache resultCache;
+    private volatile int hotBridgeWordCount;
 
     public WordGraph() {
-        this.adjacencyList = new HashMap<>();
-        this.edgeWeights = new HashMap<>();
+        this.dictionary = new WordDictionary();
+        this.pendingEdges = new EdgeCounter();
+        this.graph = CsrGraph.empty(dictionary);
+        this.updateStats = new UpdateStats();
+        this.shortestPathTrees = new ShortestPathTreeCache(DEFAULT_TREE_CACHE_BYTES);
+        this.resultCache = new QueryResultCache(Integer.getInteger("wordgraph.resultCacheEntries", DEFAULT_RESULT_CACHE_ENTRIES));
+    }
+
+    // Starts from a loaded snapshot; appends extend its dictionary and graph as usual
+    private WordGraph(CsrGraph graph) {
+        this.dictionary = graph.dictionary();
+        this.pendingEdges = new EdgeCounter();
+        this.graph = graph;
+        this.updateStats = new UpdateStats();
+        this.shortestPathTrees = new ShortestPathTreeCache(DEFAULT_TREE_CACHE_BYTES);
+        this.resultCache = new QueryResultCache(Integer.getInteger("wordgraph.resultCacheEntries", DEFAULT_RESULT_CACHE_ENTRIES));
+    }
+
+    // Maps a snapshot written by saveSnapshot; the words and edges are paged in on first use
+    public static WordGraph loadSnapshot(String snapshotPath) throws IOException {
+        return loadSnapshot(GraphSnapshotFile.load(Paths.get(snapshotPath)));
+    }
+
+    public static WordGraph loadSnapshot(GraphSnapshotFile snapshot) {
+        return new WordGraph(snapshot.graph());
+    }
+
+    // Writes the current graph to a binary snapshot, recording the corpus it was built from so
+    // that a later start can tell whether the snapshot is still up to date
+    public void saveSnapshot(String snapshotPath, String corpusPath) throws IOException {
+        GraphSnapshotFile.save(getGraph(), GraphSnapshotFile.Source.of(Paths.get(corpusPath)), Paths.get(snapshotPath));
     }
 
     public void buildGraph(String text) {
+        synchronized (writeLock) {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            long allocated = Metrics.ENABLED ? Metrics.allocatedBytes() : 0;
+            int nodes = dictionary.size();
+            int edges = pendingEdges.size();
+            addText(text);
+            dirty = true;
+            recordBuild(start, allocated, nodes, edges);
+        }
+    }
+
+    // Streams the corpus file straight into the graph; same result as buildGraph(Main.readFileContent(filePath))
+    public void buildGraphFromFile(String filePath) throws IOException {
+        synchronized (writeLock) {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            long allocated = Metrics.ENABLED ? Metrics.allocatedBytes() : 0;
+            int nodes = dictionary.size();
+            int edges = pendingEdges.size();
+            new CorpusReader(dictionary).read(Paths.get(filePath), new BigramCollector(pendingEdges));
+            dirty = true;
+            recordBuild(start, allocated, nodes, edges);
+        }
+    }
+
+    // Same result as buildGraphFromFile, but the file is split into shards that are counted on the pool
+    public void buildGraphFromFileParallel(String filePath, ForkJoinPool pool) throws IOException {
+        synchronized (writeLock) {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            long allocated = Metrics.ENABLED ? Metrics.allocatedBytes() : 0;
+            int nodes = dictionary.size();
+            int edges = pendingEdges.size();
+            new ParallelGraphBuilder(pool).build(Paths.get(filePath), dictionary, pendingEdges);
+            dirty = true;
+            recordBuild(start, allocated, nodes, edges);
+        }
+    }
+
+    // Counts the words and distinct bigrams a build added; allocation is that of the calling
+    // thread only, so a parallel build reports the merge but not the pool's shard counting
+    private void recordBuild(long start, long allocated, int nodesBefore, int edgesBefore) {
+        if (Metrics.ENABLED) {
+            Metrics.BUILD.record(start, allocated, dictionary.size() - nodesBefore, pendingEdges.size() - edgesBefore);
+        }
+    }
+
+    // Adds the bigrams of raw text and publishes a new snapshot before returning, so the text is
+    // visible to every query that starts afterwards. Queries already running keep the snapshot
+    // they started on. Returns the version of the published snapshot. The text is split into
+    // words like a corpus file (see addRawText), so it gives the same graph however it is added;
+    // text without a word changes nothing and returns the current version.
+    //
+    // Every append copies the whole CSR (see CsrGraph.withEdges), so it costs O(V + E) however
+    // short the text. Join small texts into one append.
+    public long append(String text) {
+        long start = System.nanoTime();
+        synchronized (writeLock) {
+            int wordCount = addRawText(text);
+            if (wordCount == 0 && !dirty) {
+                return graph.version();
+            }
+            CsrGraph published = publish();
+            updateStats.record(wordCount, System.nanoTime() - start);
+            return published.version();
+        }
+    }
+
+    public UpdateStats getUpdateStats() {
+        return updateStats;
+    }
+
+    // Text already cleaned by Main.readFileContent; like the corpus readers, whitespace alone holds no word
+    private int addText(String text) {
         String[] words = text.split("\\s+");
-        for (int i = 0; i < words.length - 1; i++) {
-            String word1 = words[i].toLowerCase();
-            String word2 = words[i + 1].toLowerCase();
-            if (!adjacencyList.containsKey(word1)) {
-                adjacencyList.put(word1, new ArrayList<>());
+        if (words.length == 0) {
+            return 0;
+        }
+        int previous = dictionary.intern(words[0].toLowerCase());
+        for (int i = 1; i < words.length; i++) {
+            int current = dictionary.intern(words[i].toLowerCase());
+            pendingEdges.add(previous, current);
+            previous = current;
+        }
+        return words.length;
+    }
+
+    // Adds the words of raw text under the rules of CorpusReader: only ASCII letters count, folded
+    // to lower case, whitespace separates words and any other character is dropped ("Hello," is
+    // "hello"). Blank text has no words; unlike a corpus file, leading whitespace adds no empty word.
+    private int addRawText(String text) {
+        StringBuilder word = new StringBuilder();
+        int previous = -1;
+        int count = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (c >= 'A' && c <= 'Z') {
+                word.append((char) (c - 'A' + 'a'));
+            } else if (c >= 'a' && c <= 'z') {
+                word.append(c);
+            } else if (CorpusReader.isWhitespace(c) && word.length() > 0) {
+                int current = dictionary.intern(word.toString());
+                if (previous >= 0) {
+                    pendingEdges.add(previous, current);
+                }
+                previous = current;
+                count++;
+                word.setLength(0);
             }
-            adjacencyList.get(word1).add(word2);
+        }
+        return count;
+    }
+
+    // Merges the pending bigrams into a new snapshot and makes it the current one; needs writeLock
+    private CsrGraph publish() {
+        CsrGraph next = graph.withEdges(dictionary, pendingEdges, graph.version() + 1);
+        pendingEdges = new EdgeCounter();
+        graph = next;
+        dirty = false;
+        return next;
+    }
 
-            String edge = word1 + " -> " + word2;
-            edgeWeights.put(edge, edgeWeights.getOrDefault(edge, 0) + 1);
+    // Returns the current immutable graph snapshot, publishing text added by buildGraph first
+    public CsrGraph getGraph() {
+        if (dirty) {
+            synchronized (writeLock) {
+                if (dirty) {
+                    publish();
+                }
+            }
         }
-        String lastWord = words[words.length - 1].toLowerCase();
-        if (!adjacencyList.containsKey(lastWord)) {
-            adjacencyList.put(lastWord, new ArrayList<>());
+        return graph;
+    }
+
+    public WordDictionary getDictionary() {
+        return dictionary;
+    }
+
+    // Returns the id of the word in the snapshot, or -1 if it is not a node of it
+    private int nodeId(CsrGraph g, String word) {
+        int id = dictionary.idOf(word);
+        return id < g.nodeCount() ? id : -1;
+    }
+
+    // Compatibility view: every node mapped to its distinct successors
+    public synchronized Map<String, List<String>> getAdjacencyList() {
+        CsrGraph g = getGraph();
+        if (viewsGraph != g) {
+            buildViews(g);
         }
+        return adjacencyListView;
     }
 
-    public Map<String, List<String>> getAdjacencyList() {
-        return adjacencyList;
+    // Compatibility view: "word1 -> word2" mapped to the number of times the bigram occurs
+    public synchronized Map<String, Integer> getEdgeWeights() {
+        CsrGraph g = getGraph();
+        if (viewsGraph != g) {
+            buildViews(g);
+        }
+        return edgeWeightsView;
     }
 
-    public Map<String, Integer> getEdgeWeights() {
-        return edgeWeights;
+    private void buildViews(CsrGraph g) {
+        Map<String, List<String>> adjacency = new LinkedHashMap<>(g.nodeCount() * 2);
+        Map<String, Integer> weights = new LinkedHashMap<>(g.edgeCount() * 2);
+        for (int u = 0; u < g.nodeCount(); u++) {
+            List<String> neighbors = new ArrayList<>(g.outDegree(u));
+            for (int e = g.outStart(u); e < g.outEnd(u); e++) {
+                neighbors.add(g.word(g.target(e)));
+                weights.put(g.word(u) + " -> " + g.word(g.target(e)), g.weight(e));
+            }
+            adjacency.put(g.word(u), Collections.unmodifiableList(neighbors));
+        }
+        adjacencyListView = Collections.unmodifiableMap(adjacency);
+        edgeWeightsView = Collections.unmodifiableMap(weights);
+        viewsGraph = g;
     }
 
     public String queryBridgeWords(String word1, String word2) {
-        boolean word1Exists = adjacencyList.containsKey(word1);
-        boolean word2Exists = adjacencyList.containsKey(word2);
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = Metrics.ENABLED ? Metrics.allocatedBytes() : 0;
+        CsrGraph g = getGraph();
+        String result = resultCache.get(QueryResultCache.BRIDGE_WORDS, g.version(), word1, word2);
+        if (result == null) {
+            result = bridgeWordsMessage(g, word1, word2, start, allocated);
+            resultCache.put(QueryResultCache.BRIDGE_WORDS, g.version(), word1, word2, result);
+        } else if (Metrics.ENABLED) {
+            Metrics.BRIDGE_QUERY.record(start, allocated, 0, 0);
+        }
+        return result;
+    }
+
+    private String bridgeWordsMessage(CsrGraph g, String word1, String word2, long start, long allocated) {
+        int source = nodeId(g, word1);
+        int target = nodeId(g, word2);
+        boolean word1Exists = source >= 0;
+        boolean word2Exists = target >= 0;
 
         if (!word1Exists || !word2Exists) {
             if (!word1Exists && !word2Exists) {
@@ -53,201 +289,372 @@ public class WordGraph {
             }
         }
 
-        // Set to store unique bridge words
-        Set<String> uniqueBridgeWords = new LinkedHashSet<>();
-
-        // Queue for BFS
-        Queue<List<String>> queue = new LinkedList<>();
-        queue.add(Arrays.asList(word1));
-
-        while (!queue.isEmpty()) {
-            List<String> path = queue.poll();
-            String lastWord = path.get(path.size() - 1);
-
-            // Get neighbors of the last word in the current path
-            for (String neighbor : adjacencyList.get(lastWord)) {
-                if (neighbor.equals(word2)) {
-                    // If the neighbor is word2, we found a complete path
-                    if (path.size() > 1) { // Ensure there's a bridge word
-                        List<String> completePath = new ArrayList<>(path);
-                        completePath.add(word2);
-                        // Add the bridge words (excluding word1 and word2) to the set in the order of appearance
-                        uniqueBridgeWords.addAll(completePath.subList(1, completePath.size() - 1));
-                    }
-                } else {
-                    // Otherwise, continue searching
-                    if (!path.contains(neighbor)) { // Avoid cycles
-                        List<String> newPath = new ArrayList<>(path);
-                        newPath.add(neighbor);
-                        queue.add(newPath);
-                    }
-                }
-            }
+        // A bridge is a path of length two, so an unreachable pair has none. The index is only
+        // consulted once a shortest-path query has built it, and only through its O(1) label test:
+        // an intersection is cheaper than a build or a search.
+        ReachabilityIndex reachability = reachabilityIndex;
+        List<String> bridgeWords = reachability != null && reachability.graph() == g && !reachability.mayReach(source, target)
+                ? Collections.<String>emptyList() : bridgeWordEngine(g).bridgeWords(source, target);
+        if (Metrics.ENABLED) {
+            recordBridgeQuery(g, start, allocated, source, target);
         }
-
-        if (uniqueBridgeWords.isEmpty()) {
+        if (bridgeWords.isEmpty()) {
             return "No bridge words from " + word1 + " to " + word2 + "!";
         } else {
-            StringBuilder result = new StringBuilder("The bridge words from " + word1 + " to " + word2 + " are:");
-            result.append(String.join(",", uniqueBridgeWords));
-            return result.toString();
+            return "The bridge words from " + word1 + " to " + word2 + " are:" + String.join(",", bridgeWords);
         }
     }
 
-    public String generateNewText(String inputText) {
+    // Structured bridge-word query: every X with word1 -> X -> word2, in order of first appearance
+    // in the corpus. Empty if there are none or either word is not in the graph.
+    public List<String> findBridgeWords(String word1, String word2) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = Metrics.ENABLED ? Metrics.allocatedBytes() : 0;
+        CsrGraph g = getGraph();
+        int source = nodeId(g, word1);
+        int target = nodeId(g, word2);
+        if (source < 0 || target < 0) {
+            return Collections.emptyList();
+        }
+        List<String> bridgeWords = bridgeWordEngine(g).bridgeWords(source, target);
+        if (Metrics.ENABLED) {
+            recordBridgeQuery(g, start, allocated, source, target);
+        }
+        return bridgeWords;
+    }
 
-        String[] words = inputText.split("\\s+");
+    // An intersection looks at the successors of the source and the predecessors of the target
+    private static void recordBridgeQuery(CsrGraph g, long start, long allocated, int source, int target) {
+        int edges = g.outDegree(source) + g.inDegree(target);
+        Metrics.BRIDGE_QUERY.record(start, allocated, edges, edges);
+    }
+
+    // Batch form of findBridgeWords: result i holds the bridge words from words1[i] to words2[i]
+    public List<List<String>> findBridgeWords(String[] words1, String[] words2) {
+        CsrGraph g = getGraph();
+        int[] sources = new int[words1.length];
+        int[] targets = new int[words2.length];
+        for (int i = 0; i < words1.length; i++) {
+            sources[i] = nodeId(g, words1[i]);
+            targets[i] = nodeId(g, words2[i]);
+        }
+        BridgeWordEngine engine = bridgeWordEngine(g);
+        List<List<String>> results = new ArrayList<>(words1.length);
+        for (int[] ids : engine.bridgeIds(sources, targets)) {
+            results.add(engine.toWords(ids));
+        }
+        return results;
+    }
+
+    // Number of highest out-degree words that get a precomputed two-hop bridge index
+    public void setHotBridgeWordCount(int hotBridgeWordCount) {
+        this.hotBridgeWordCount = hotBridgeWordCount;
+        this.bridgeWordEngine = null;
+    }
+
+    // Returns the bridge-word engine of the snapshot, replacing the cached one when the graph changed
+    BridgeWordEngine bridgeWordEngine(CsrGraph g) {
+        BridgeWordEngine engine = bridgeWordEngine;
+        if (engine == null || engine.graph() != g) {
+            engine = new BridgeWordEngine(g, hotBridgeWordCount);
+            bridgeWordEngine = engine;
+        }
+        return engine;
+    }
+
+    public String generateNewText(String inputText) {
+        return generateNewText(inputText, new SplittableRandom());
+    }
 
-        List<String> newTextWords = new ArrayList<>();
+    public String generateNewText(String inputText, SplittableRandom random) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = Metrics.ENABLED ? Metrics.allocatedBytes() : 0;
+        String text = textGenerator().generate(inputText, random);
+        if (Metrics.ENABLED) {
+            Metrics.TEXT_GENERATION.record(start, allocated, 0, 0);
+        }
+        return text;
+    }
 
-        for (int i = 0; i < words.length - 1; i++) {
-            String word1 = words[i];
-            String word2 = words[i + 1];
+    // Generator bound to the current snapshot, for many lines against the same graph
+    public TextGenerator textGenerator() {
+        CsrGraph g = getGraph();
+        return new TextGenerator(g, dictionary, bridgeWordEngine(g));
+    }
 
-            newTextWords.add(word1);
+    public String calcShortestPath(String word1, String word2) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = Metrics.ENABLED ? Metrics.allocatedBytes() : 0;
+        CsrGraph g = getGraph();
+        String result = resultCache.get(QueryResultCache.SHORTEST_PATH, g.version(), word1, word2);
+        if (result == null) {
+            result = shortestPathMessage(g, word1, word2, start, allocated);
+            resultCache.put(QueryResultCache.SHORTEST_PATH, g.version(), word1, word2, result);
+        } else if (Metrics.ENABLED) {
+            Metrics.SHORTEST_PATH.record(start, allocated, 0, 0);
+        }
+        return result;
+    }
 
-            String bridgeWords = queryBridgeWords(word1, word2);
+    private String shortestPathMessage(CsrGraph g, String word1, String word2, long start, long allocated) {
+        int source = nodeId(g, word1);
+        int target = nodeId(g, word2);
+        // Check if word1 and word2 are in the graph
+        if (source < 0 || target < 0) {
+            return "No " + (source >= 0 ? "word2" : "word1") + " in the graph!";
+        }
+        // Without this check Dijkstra settles everything reachable before giving up
+        if (!reachabilityIndex(g).canReach(source, target)) {
+            if (Metrics.ENABLED) {
+                Metrics.SHORTEST_PATH.record(start, allocated, 0, 0);
+            }
+            return "No shortest path from " + word1 + " to " + word2 + "!";
+        }
+        if (landmarkCount > 0) {
+            LandmarkOracle oracle = landmarkOracle(g);
+            LandmarkOracle.Search search = oracle.search(source, target, ShortestPathTree.MAX_PATHS);
+            if (Metrics.ENABLED) {
+                Metrics.SHORTEST_PATH.record(start, allocated, search.settledCount(), 0);
+                // Measuring only: plain Dijkstra on the same pair shows what the landmarks save
+                long baselineStart = System.nanoTime();
+                long baselineAllocated = Metrics.allocatedBytes();
+                int dijkstra = oracle.compareWithDijkstra(source, target, search);
+                Metrics.LANDMARK_BASELINE.record(baselineStart, baselineAllocated, dijkstra, 0);
+            }
+            return formatShortestPaths(g, search.distance(), search.paths(), word1, word2);
+        }
+        // A cached tree is reused. The first query from a source runs once on a pooled workspace
+        // and allocates no per-word arrays; when the source comes back its tree is cached, so a
+        // popular source settles each node at most once whatever the targets.
+        ShortestPathTree cached = shortestPathTrees.getIfPresent(g, source);
+        if (cached == null && askedBefore(g, source)) {
+            cached = new ShortestPathTree(g, source);
+            shortestPathTrees.put(cached);
+        }
+        if (cached != null) {
+            return shortestPathMessage(cached, word1, word2, target, start, allocated);
+        }
+        try (TraversalWorkspace workspace = TraversalWorkspace.acquire(g.nodeCount())) {
+            return shortestPathMessage(new ShortestPathTree(g, source, workspace), word1, word2, target, start, allocated);
+        }
+    }
 
-            if (!bridgeWords.startsWith("No")&&(!bridgeWords.startsWith("Neither"))) {
+    // Whether calcShortestPath recently had this source on this snapshot; remembers it either
+    // way. Sources sharing a slot push each other out, which only costs a one-shot search.
+    private boolean askedBefore(CsrGraph g, int source) {
+        long key = (g.version() << 32) | source;
+        int slot = (source * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(RECENT_SOURCE_SLOTS));
+        if (recentSources.get(slot) == key) {
+            return true;
+        }
+        recentSources.set(slot, key);
+        return false;
+    }
 
-                int startIndex = ("The bridge words from " + word1 + " to " + word2 + " are:").length();
+    private static String shortestPathMessage(ShortestPathTree tree, String word1, String word2, int target, long start, long allocated) {
+        // A cached tree may already be (partly) settled; only the work done for this call counts
+        long settled = Metrics.ENABLED ? tree.settledCount() : 0;
+        long scanned = Metrics.ENABLED ? tree.scannedEdges() : 0;
+        String paths = formatShortestPaths(tree, word1, word2, target);
+        if (Metrics.ENABLED) {
+            Metrics.SHORTEST_PATH.record(start, allocated, tree.settledCount() - settled, tree.scannedEdges() - scanned);
+        }
+        return paths;
+    }
 
-                String bridgeWordsPart = bridgeWords.substring(startIndex);
+    // Returns the (lazily settled) shortest-path tree of the word, or null if it is not in the graph
+    public ShortestPathTree shortestPathTree(String word) {
+        CsrGraph g = getGraph();
+        int source = nodeId(g, word);
+        return source < 0 ? null : shortestPathTree(g, source);
+    }
 
-                List<String> bridgeWordList = Arrays.asList(bridgeWordsPart.split(","));
+    private ShortestPathTree shortestPathTree(CsrGraph g, int source) {
+        return shortestPathTrees.get(g, source);
+    }
 
-                Random random = new Random();
-                String bridgeWord = bridgeWordList.get(random.nextInt(bridgeWordList.size()));
+    // Computes the complete shortest-path trees of the words on the pool and returns them in
+    // completion order; words that are not in the graph are skipped. Trees are kept in the cache.
+    public Iterator<ShortestPathTree> shortestPathTrees(Collection<String> words, ExecutorService pool) {
+        CsrGraph g = getGraph();
+        int[] sources = new int[words.size()];
+        int count = 0;
+        for (String word : words) {
+            int source = nodeId(g, word);
+            if (source >= 0) {
+                sources[count++] = source;
+            }
+        }
+        return new ShortestPathBatch(shortestPathTrees).computeAll(g, Arrays.copyOf(sources, count), pool);
+    }
 
-                newTextWords.add(bridgeWord);
+    // Returns the reachability index of the snapshot. After a change the previous index is
+    // reused if the new edges join known words and do not change reachability, and rebuilt otherwise.
+    ReachabilityIndex reachabilityIndex(CsrGraph g) {
+        ReachabilityIndex index = reachabilityIndex;
+        if (index == null || index.graph() != g) {
+            synchronized (reachabilityIndexLock) {
+                index = reachabilityIndex;
+                if (index == null || index.graph() != g) {
+                    index = index != null && index.graph().version() < g.version() ? index.update(g) : ReachabilityIndex.build(g);
+                    reachabilityIndex = index;
+                }
             }
         }
+        return index;
+    }
 
-        newTextWords.add(words[words.length - 1]);
+    // Number of landmarks for goal-directed shortest-path queries (see LandmarkOracle); 0, the
+    // default, answers them from cached Dijkstra trees instead
+    public void setLandmarkCount(int landmarkCount) {
+        this.landmarkCount = landmarkCount;
+        this.landmarkOracle = null;
+    }
 
+    // Returns the landmark oracle of the snapshot. After a change the distances are recomputed
+    // for the same landmark words, skipping their selection.
+    LandmarkOracle landmarkOracle(CsrGraph g) {
+        LandmarkOracle oracle = landmarkOracle;
+        if (oracle == null || oracle.graph() != g) {
+            synchronized (landmarkOracleLock) {
+                oracle = landmarkOracle;
+                if (oracle == null || oracle.graph() != g) {
+                    oracle = oracle != null && oracle.graph().version() < g.version()
+                            ? oracle.rebuild(g) : LandmarkOracle.build(g, landmarkCount);
+                    landmarkOracle = oracle;
+                }
+            }
+        }
+        return oracle;
+    }
 
-        return String.join(" ", newTextWords);
+    // Whether word2 can be reached from word1 along the edges of the graph
+    public boolean canReach(String word1, String word2) {
+        CsrGraph g = getGraph();
+        int source = nodeId(g, word1);
+        int target = nodeId(g, word2);
+        return source >= 0 && target >= 0 && reachabilityIndex(g).canReach(source, target);
     }
 
-    public String calcShortestPath(String word1, String word2) {
-        // Check if word1 and word2 are in the graph
-        if (!adjacencyList.containsKey(word1) || !adjacencyList.containsKey(word2)) {
-            return "No " + (adjacencyList.containsKey(word1) ? "word2" : "word1") + " in the graph!";
-        }
-
-        // Initialize a queue for breadth-first search
-        Queue<String> queue = new LinkedList<>();
-        // Initialize a map to track visited nodes
-        Map<String, Boolean> visited = new HashMap<>();
-        // Initialize a map to track the shortest path length to each node
-        Map<String, Integer> shortestPathLength = new HashMap<>();
-        // Initialize a map to track the predecessors for each node in the shortest path
-        Map<String, String> predecessors = new HashMap<>();
-
-        // Initialize the shortest path length for all nodes to be infinity
-        for (String node : adjacencyList.keySet()) {
-            shortestPathLength.put(node, Integer.MAX_VALUE);
-            visited.put(node, false);
-        }
-
-        // Start from word1
-        queue.offer(word1);
-        visited.put(word1, true);
-        shortestPathLength.put(word1, 0);
-
-        // Perform breadth-first search
-        while (!queue.isEmpty()) {
-            String currentWord = queue.poll();
-            List<String> neighbors = adjacencyList.get(currentWord);
-            if (neighbors != null) {
-                for (String neighbor : neighbors) {
-                    if (!visited.getOrDefault(neighbor, false)) {
-                        visited.put(neighbor, true);
-                        int weight = edgeWeights.get(currentWord + " -> " + neighbor);
-                        shortestPathLength.put(neighbor, shortestPathLength.get(currentWord) + weight);
-                        predecessors.put(neighbor, currentWord);
-                        queue.offer(neighbor);
-                    }
+    // Weighted PageRank and degrees of the current snapshot, computed on all cores the first
+    // time they are asked for after a change
+    public WordCentrality wordCentrality() {
+        CsrGraph g = getGraph();
+        WordCentrality centrality = wordCentrality;
+        if (centrality == null || centrality.graph() != g) {
+            synchronized (wordCentralityLock) {
+                centrality = wordCentrality;
+                if (centrality == null || centrality.graph() != g) {
+                    centrality = WordCentrality.compute(g, ForkJoinPool.commonPool());
+                    wordCentrality = centrality;
                 }
             }
         }
+        return centrality;
+    }
 
-        // Retrieve the shortest paths from word1 to word2
-        List<List<String>> shortestPaths = new ArrayList<>();
-        int shortestLength = shortestPathLength.get(word2);
-        if (shortestLength == Integer.MAX_VALUE) {
+    // The k words with the highest PageRank, highest first
+    public List<String> centralWords(int k) {
+        WordCentrality centrality = wordCentrality();
+        List<String> words = new ArrayList<>();
+        for (int node : centrality.topByRank(k)) {
+            words.add(centrality.graph().word(node));
+        }
+        return words;
+    }
+
+    public ShortestPathTreeCache getShortestPathTreeCache() {
+        return shortestPathTrees;
+    }
+
+    public QueryResultCache getQueryResultCache() {
+        return resultCache;
+    }
+
+    private static String formatShortestPaths(ShortestPathTree tree, String word1, String word2, int target) {
+        int shortestLength = tree.distance(target);
+        if (shortestLength < 0) {
+            return "No shortest path from " + word1 + " to " + word2 + "!";
+        }
+        return formatShortestPaths(tree.graph(), shortestLength, tree.paths(target, ShortestPathTree.MAX_PATHS), word1, word2);
+    }
+
+    private static String formatShortestPaths(CsrGraph g, int shortestLength, List<int[]> paths, String word1, String word2) {
+        if (shortestLength < 0) {
             return "No shortest path from " + word1 + " to " + word2 + "!";
-        } else {
-            List<String> path = new ArrayList<>();
-            String currentWord = word2;
-            while (currentWord != null) {
-                path.add(0, currentWord);
-                currentWord = predecessors.get(currentWord);
-            }
-            shortestPaths.add(path);
         }
 
         // Output the shortest paths
         StringBuilder result = new StringBuilder();
         result.append("The shortest path(s) from " + word1 + " to " + word2 + " with length " + shortestLength + " are:\n");
-        for (List<String> path : shortestPaths) {
-            result.append(String.join(" -> ", path)).append("\n");
+        for (int[] path : paths) {
+            for (int i = 0; i < path.length; i++) {
+                if (i > 0) {
+                    result.append(" -> ");
+                }
+                result.append(g.word(path[i]));
+            }
+            result.append("\n");
         }
         return result.toString();
     }
 
     public void printShortestDistancesFromWord(String word) {
-        // 遍历每个单词，并计算其与给定单词之间的最短距离
-        for (String otherWord : adjacencyList.keySet()) {
-            if (!otherWord.equals(word)) { // 跳过给定单词本身
-                // 调用 calcShortestPath 计算最短路径，并打印结果
-                String shortestPathResult = calcShortestPath(word, otherWord);
-                System.out.println(shortestPathResult);
-
+        CsrGraph g = getGraph();
+        int source = nodeId(g, word);
+        if (source < 0) {
+            System.out.println("No word1 in the graph!");
+            return;
+        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = Metrics.ENABLED ? Metrics.allocatedBytes() : 0;
+        // 一次 Dijkstra 得到最短路径树，再用它回答所有其他单词
+        ShortestPathTree tree = shortestPathTree(g, source);
+        long settled = Metrics.ENABLED ? tree.settledCount() : 0;
+        long scanned = Metrics.ENABLED ? tree.scannedEdges() : 0;
+        tree.settleAll();
+        for (int node = 0; node < g.nodeCount(); node++) {
+            if (node != source) { // 跳过给定单词本身
+                System.out.println(formatShortestPaths(tree, word, g.word(node), node));
             }
         }
+        if (Metrics.ENABLED) {
+            Metrics.SHORTEST_DISTANCES.record(start, allocated, tree.settledCount() - settled, tree.scannedEdges() - scanned);
+        }
     }
 
 
     public String randomWalk() {
-        // Randomly select a starting node
-        Random random = new Random();
-        List<String> nodes = new ArrayList<>(adjacencyList.keySet());
-        String currentNode = nodes.get(random.nextInt(nodes.size()));
-
-        StringBuilder result = new StringBuilder();
-        result.append(currentNode).append(" ");
-
-        Set<String> visitedEdges = new HashSet<>();
-
-        while (adjacencyList.containsKey(currentNode) && !adjacencyList.get(currentNode).isEmpty()) {
-            // Randomly choose the next node
-            List<String> neighbors = adjacencyList.get(currentNode);
-            String nextNode = neighbors.get(random.nextInt(neighbors.size()));
-
-            // Check if the edge has been visited before
-            String edge = currentNode + " -> " + nextNode;
-            if (visitedEdges.contains(edge)) {
-                result.append(nextNode).append(" ");
-                break;
-            }
-
-            // Append the next node to the result
-            result.append(nextNode).append(" ");
+        return randomWalk(new SplittableRandom());
+    }
 
-            // Mark the edge as visited
-            visitedEdges.add(edge);
+    public String randomWalk(SplittableRandom random) {
+        CsrGraph g = getGraph();
+        try (TraversalWorkspace workspace = TraversalWorkspace.acquire(g.nodeCount())) {
+            return randomWalkEngine(g).walk(random, workspace.set());
+        }
+    }
 
-            // Move to the next node
-            currentNode = nextNode;
+    // Runs count walks in parallel on the pool, reproducibly for a given seed; the consumer is
+    // called from pool threads
+    public void randomWalks(long count, long seed, ForkJoinPool pool, Consumer<String> consumer) {
+        randomWalkEngine(getGraph()).walks(count, seed, pool, consumer);
+    }
 
-            // Check if the current node has no outgoing edges
-            if (!adjacencyList.containsKey(currentNode) || adjacencyList.get(currentNode).isEmpty()) {
-                break;
+    // Returns the walk engine of the snapshot, building its alias tables when the graph changed.
+    // Only one thread builds them; concurrent first walks wait instead of each building a copy.
+    RandomWalkEngine randomWalkEngine(CsrGraph g) {
+        RandomWalkEngine engine = randomWalkEngine;
+        if (engine == null || engine.graph() != g) {
+            synchronized (randomWalkEngineLock) {
+                engine = randomWalkEngine;
+                if (engine == null || engine.graph() != g) {
+                    engine = new RandomWalkEngine(g);
+                    randomWalkEngine = engine;
+                }
             }
         }
-
-        return result.toString().trim();
+        return engine;
     }
 
     public void writeToFile(String filePath, String content) {
@@ -1,21 +1,62 @@
 
 
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
-import demo.*;
 
-import static demo.Main.readFileContent;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
 import static org.junit.Assert.*;
 public class WordGraphTestW {
 
     private WordGraph wordGraph;
+    // Rendered pictures go to a temporary directory, not the working tree's picture/
+    private static Path pictureDir;
+
     @Before
     public void setUp() throws Exception {
 
         String filePath = "./src/test.txt";
+        if (pictureDir == null) {
+            pictureDir = Files.createTempDirectory("wordgraph-pictures");
+            Graphviz.setRenderer(new GraphRenderer(new GraphRenderer.Config().outputDirectory(pictureDir.toString())));
+        }
 
         wordGraph = new WordGraph();
-        String processedContent = readFileContent(filePath);
+        String processedContent = Main.readFileContent(filePath);
         wordGraph.buildGraph(processedContent);
         Graphviz.showDirectedGraph(wordGraph);
         System.out.println("setUp successful");
@@ -50,4 +91,1177 @@ public class WordGraphTestW {
         String result = wordGraph.queryBridgeWords("birds", "with");
         assertEquals("No bridge words from birds to with!", result);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFindBridgeWords_structuredAndBatch() {
+        assertEquals(Arrays.asList("with"), wordGraph.findBridgeWords("birds", "feathers"));
+        assertTrue(wordGraph.findBridgeWords("birds", "with").isEmpty());
+        List<List<String>> batch = wordGraph.findBridgeWords(new String[]{"birds", "birds", "hahaha"},
+                new String[]{"feathers", "with", "birds"});
+        assertEquals(Arrays.asList("with"), batch.get(0));
+        assertTrue(batch.get(1).isEmpty());
+        assertTrue(batch.get(2).isEmpty());
+    }
+
+    @Test
+    public void testCalcShortestPath_weightedDijkstra() {
+        String result = wordGraph.calcShortestPath("birds", "feathers");
+        assertEquals("The shortest path(s) from birds to feathers with length 2 are:\nbirds -> with -> feathers\n", result);
+        assertEquals("No shortest path from air to birds!", wordGraph.calcShortestPath("air", "birds"));
+    }
+
+    @Test
+    public void testLatencyHistogram_percentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000, histogram.max());
+        long p50 = histogram.percentile(0.5);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 1.125);
+        long p99 = histogram.percentile(0.99);
+        assertTrue(p99 >= 990_000 && p99 <= 1_000_000);
+        assertEquals(1_000_000, histogram.percentile(0.999));
+    }
+
+    @Test
+    public void testQueryResultCache_invalidatedByAppend() {
+        assertEquals("No bridge words from birds to with!", wordGraph.queryBridgeWords("birds", "with"));
+        assertEquals("No bridge words from birds to with!", wordGraph.queryBridgeWords("birds", "with"));
+        assertEquals(1, wordGraph.getQueryResultCache().hits());
+        wordGraph.append("birds sing with");
+        assertEquals("The bridge words from birds to with are:sing", wordGraph.queryBridgeWords("birds", "with"));
+    }
+
+    @Test
+    public void testAppend_readersKeepTheirSnapshot() {
+        CsrGraph before = wordGraph.getGraph();
+        String beforeContents = describe(before);
+        int air = wordGraph.getDictionary().idOf("air");
+        int birds = wordGraph.getDictionary().idOf("birds");
+        assertEquals(-1, before.findEdge(air, birds));
+
+        long version = wordGraph.append("air birds zebras");
+        CsrGraph after = wordGraph.getGraph();
+        assertEquals(version, after.version());
+        assertTrue(after.version() > before.version());
+        assertEquals(before.nodeCount() + 1, after.nodeCount());
+        assertTrue(after.findEdge(air, birds) >= 0);
+        // The old snapshot is untouched, and it does not see the new word
+        assertEquals(beforeContents, describe(before));
+        assertEquals(-1, before.findEdge(air, birds));
+        assertFalse(wordGraph.getDictionary().idOf("zebras") < before.nodeCount());
+    }
+
+    @Test
+    public void testAppend_updateStatsCountAppendsAndWords() {
+        UpdateStats stats = wordGraph.getUpdateStats();
+        assertEquals(0, stats.getAppendCount());
+        wordGraph.append("air birds zebras");
+        wordGraph.append("zebras sing");
+        assertEquals(2, stats.getAppendCount());
+        assertEquals(5, stats.getWordCount());
+        assertTrue(stats.getLastVisibilityLagNanos() > 0);
+        assertTrue(stats.getMaxVisibilityLagNanos() >= stats.getLastVisibilityLagNanos());
+        assertTrue(stats.getWordsPerSecond() > 0);
+    }
+
+    @Test
+    public void testCanReach_matchesShortestPath() {
+        assertTrue(wordGraph.canReach("birds", "feathers"));
+        assertFalse(wordGraph.canReach("air", "birds"));
+        assertFalse(wordGraph.canReach("birds", "hahahaha"));
+    }
+
+    @Test
+    public void testCanReach_matchesBreadthFirstSearchAcrossAppends() {
+        WordGraph graph = new WordGraph();
+        graph.buildGraph("a b c d e f");
+        assertReachabilityMatchesSearch(graph);
+        // Bigrams already in the graph, and a shortcut along an existing path: the index is reused
+        graph.append("a b c");
+        assertReachabilityMatchesSearch(graph);
+        graph.append("b e");
+        assertReachabilityMatchesSearch(graph);
+        // A cycle between known words: rebuilt
+        graph.append("e b");
+        assertReachabilityMatchesSearch(graph);
+        // New words: rebuilt
+        graph.append("x f g a");
+        assertReachabilityMatchesSearch(graph);
+
+        // Short random appends over a small vocabulary mix both cases
+        SplittableRandom random = new SplittableRandom(5);
+        for (int i = 0; i < 200; i++) {
+            int vocabulary = 10 + i / 5;
+            StringBuilder text = new StringBuilder();
+            for (int j = 1 + random.nextInt(3); j >= 0; j--) {
+                // Appended text keeps letters only, so the words are spelled in letters
+                int word = random.nextInt(vocabulary);
+                text.append('w').append((char) ('a' + word / 26)).append((char) ('a' + word % 26)).append(' ');
+            }
+            graph.append(text.toString());
+            assertReachabilityMatchesSearch(graph);
+        }
+    }
+
+    // Every pair of words, through the index and through a plain breadth-first search
+    private static void assertReachabilityMatchesSearch(WordGraph graph) {
+        CsrGraph g = graph.getGraph();
+        ReachabilityIndex index = graph.reachabilityIndex(g);
+        int n = g.nodeCount();
+        for (int source = 0; source < n; source++) {
+            boolean[] reached = new boolean[n];
+            int[] queue = new int[n];
+            int head = 0;
+            int tail = 0;
+            reached[source] = true;
+            queue[tail++] = source;
+            while (head < tail) {
+                int u = queue[head++];
+                for (int e = g.outStart(u); e < g.outEnd(u); e++) {
+                    if (!reached[g.target(e)]) {
+                        reached[g.target(e)] = true;
+                        queue[tail++] = g.target(e);
+                    }
+                }
+            }
+            for (int target = 0; target < n; target++) {
+                String pair = g.word(source) + " -> " + g.word(target) + " at version " + g.version();
+                assertEquals(pair, reached[target], graph.canReach(g.word(source), g.word(target)));
+                if (reached[target]) {
+                    assertTrue(pair, index.mayReach(source, target));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCalcShortestPath_landmarksGiveSameAnswer() {
+        wordGraph.setLandmarkCount(4);
+        String result = wordGraph.calcShortestPath("birds", "feathers");
+        assertEquals("The shortest path(s) from birds to feathers with length 2 are:\nbirds -> with -> feathers\n", result);
+        assertEquals("No shortest path from air to birds!", wordGraph.calcShortestPath("air", "birds"));
+    }
+
+    @Test
+    public void testTraversalWorkspace_queriesAllocateNoPerWordArrays() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        // 50,000 words: one int array per query over the vocabulary would already be 200 KB
+        SplittableRandom random = new SplittableRandom(1);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300_000; i++) {
+            text.append('w').append(random.nextInt(50_000)).append(' ');
+        }
+        WordGraph large = new WordGraph();
+        large.buildGraph(text.toString());
+        int nodeCount = large.getGraph().nodeCount();
+        String[] words = new String[100];
+        long perQuery = 0;
+        // The first round warms up the workspace pool; every round asks about new words
+        for (int round = 1; round <= 2; round++) {
+            for (int i = 0; i < words.length; i++) {
+                words[i] = "w" + random.nextInt(50_000);
+            }
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < words.length; i++) {
+                String other = words[(i + 1) % words.length];
+                large.calcShortestPath(words[i], other);
+                large.queryBridgeWords(words[i], other);
+                large.canReach(words[i], other);
+                large.randomWalk(new SplittableRandom(i));
+            }
+            perQuery = (threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before) / words.length;
+        }
+        assertTrue("allocated " + perQuery + " bytes per round of queries", perQuery < nodeCount);
+    }
+
+    @Test
+    public void testWordCentrality_ranksSumToOneAndTopWordsLead() {
+        WordCentrality centrality = wordGraph.wordCentrality();
+        CsrGraph graph = centrality.graph();
+        double total = 0;
+        long in = 0;
+        long out = 0;
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            total += centrality.rank(node);
+            in += centrality.inWeight(node);
+            out += centrality.outWeight(node);
+        }
+        assertEquals(1.0, total, 1e-9);
+        assertEquals(in, out);
+        assertEquals(Arrays.asList("the", "forest"), wordGraph.centralWords(2));
+        int[] top = centrality.topByInWeight(3);
+        assertEquals("the", graph.word(top[0]));
+        assertTrue(centrality.inWeight(top[1]) >= centrality.inWeight(top[2]));
+    }
+
+    @Test
+    public void testQueryServer_pipelinedResponsesComeBackInRequestOrder() throws Exception {
+        String[] requests = {"bridge birds with", "path birds feathers", "path air birds", "walk 7", "ping", "bridge a", "nonsense"};
+        try (QueryServer server = startServer(4);
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            for (int i = 0; i < 700; i++) {
+                out.write(requests[i % requests.length] + "\n");
+            }
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for (int i = 0; i < 700; i++) {
+                assertEquals(server.answer(requests[i % requests.length]), in.readLine());
+            }
+        }
+    }
+
+    @Test
+    public void testQueryServer_clientThatDoesNotReadStopsTheReader() throws Exception {
+        // Large responses, so that socket buffers hold only a small part of them
+        StringBuilder filler = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            filler.append(" zq").append(i);
+        }
+        int total = 4000;
+        try (QueryServer server = startServer(4);
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            Thread sender = new Thread(() -> {
+                try {
+                    Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                    for (int i = 0; i < total; i++) {
+                        out.write("text request" + i + filler + "\n");
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    // The test fails on the missing responses
+                }
+            });
+            sender.setDaemon(true);
+            sender.start();
+            // Wait until the server stops taking requests
+            long read = -1;
+            for (int i = 0; i < 100 && server.requestsRead() != read; i++) {
+                read = server.requestsRead();
+                Thread.sleep(200);
+            }
+            assertTrue("server read " + read + " requests", read < total);
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for (int i = 0; i < total; i++) {
+                assertTrue(in.readLine().startsWith("{\"ok\":true,\"result\":\"request" + i + " "));
+            }
+            sender.join();
+        }
+    }
+
+    private QueryServer startServer(int maxInFlight) throws IOException {
+        QueryServer server = new QueryServer(wordGraph, 0, maxInFlight);
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                // Closed by the test
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+        return server;
+    }
+
+    @Test(timeout = 10_000)
+    public void testResultSink_failedWriterDoesNotBlockProducers() throws Exception {
+        Path dir = Files.createTempDirectory("result-sink");
+        // Rotation to out.txt.1 fails because a directory is in the way
+        Files.createDirectory(dir.resolve("out.txt.1"));
+        ResultSink sink = new ResultSink(new ResultSink.Config(dir.resolve("out.txt").toString())
+                .queueCapacity(4).flushBytes(16).maxFileBytes(10));
+        try {
+            for (int i = 0; i < 100_000; i++) {
+                sink.accept("line " + i);
+            }
+            fail("accept kept queueing after the writer failed");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        try {
+            sink.close();
+            fail("close did not report the failure");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testResultSink_gzipFlushMakesLinesReadable() throws Exception {
+        Path file = Files.createTempDirectory("result-sink").resolve("out.txt.gz");
+        try (ResultSink sink = new ResultSink(new ResultSink.Config(file.toString()).gzip(true))) {
+            for (int i = 0; i < 1000; i++) {
+                sink.accept("line " + i);
+            }
+            sink.flush();
+            int lines = 0;
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+                int c;
+                while ((c = in.read()) >= 0) {
+                    lines += c == '\n' ? 1 : 0;
+                }
+            } catch (EOFException e) {
+                // The stream is not finished until the sink is closed
+            }
+            assertEquals(1000, lines);
+        }
+    }
+
+    @Test
+    public void testBuildGraph_streamingAndParallelBuildsMatchInMemoryBuild() throws Exception {
+        String alphabet = "abcAB  \n\t,.!'-1";
+        SplittableRandom random = new SplittableRandom(3);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Path file = Files.createTempFile("corpus", ".txt");
+        try {
+            for (int corpus = 0; corpus < 100; corpus++) {
+                StringBuilder text = new StringBuilder();
+                int length = random.nextInt(600);
+                for (int i = 0; i < length; i++) {
+                    text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+
+                WordGraph inMemory = new WordGraph();
+                inMemory.buildGraph(Main.readFileContent(file.toString()));
+                WordDictionary dictionary = new WordDictionary();
+                EdgeCounter edges = new EdgeCounter();
+                // Windows of a few bytes, so that words and whitespace runs straddle them
+                new CorpusReader(dictionary, 1 + random.nextInt(8)).read(file, new BigramCollector(edges));
+                WordDictionary parallelDictionary = new WordDictionary();
+                EdgeCounter parallelEdges = new EdgeCounter();
+                // Shards of a few dozen bytes, so that many shard seams fall inside the text
+                new ParallelGraphBuilder(pool, 16).build(file, parallelDictionary, parallelEdges);
+
+                String expected = describe(inMemory.getGraph());
+                assertEquals("corpus " + corpus + ": " + text, expected, describe(CsrGraph.freeze(dictionary, edges)));
+                assertEquals("corpus " + corpus + ": " + text, expected, describe(CsrGraph.freeze(parallelDictionary, parallelEdges)));
+            }
+        } finally {
+            pool.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    // Words and weighted bigrams of the graph, independent of the word ids
+    private static String describe(CsrGraph graph) {
+        TreeMap<String, Integer> bigrams = new TreeMap<>();
+        TreeSet<String> words = new TreeSet<>();
+        for (int u = 0; u < graph.nodeCount(); u++) {
+            words.add(graph.word(u));
+            for (int e = graph.outStart(u); e < graph.outEnd(u); e++) {
+                bigrams.put(graph.word(u) + " -> " + graph.word(graph.target(e)), graph.weight(e));
+            }
+        }
+        return words + " " + bigrams;
+    }
+
+    @Test
+    public void testRenderCache_hitsAndLeastRecentlyUsedEviction() throws IOException {
+        Path directory = Files.createTempDirectory("render-cache");
+        RenderCache cache = new RenderCache(directory, 100);
+        assertNull(cache.get("a.png"));
+        cache.put("a.png", Files.write(cache.temporaryFile("a.png"), new byte[40]));
+        cache.put("b.png", Files.write(cache.temporaryFile("b.png"), new byte[40]));
+        assertNotNull(cache.get("a.png"));
+        // Over 100 bytes: b is the least recently used image
+        cache.put("c.png", Files.write(cache.temporaryFile("c.png"), new byte[40]));
+        assertNull(cache.get("b.png"));
+        assertFalse(Files.exists(directory.resolve("b.png")));
+        assertNotNull(cache.get("a.png"));
+        assertNotNull(cache.get("c.png"));
+        assertEquals(2, cache.size());
+        assertEquals(80, cache.bytes());
+        assertEquals(3, cache.hits());
+        assertEquals(2, cache.misses());
+
+        // A restart adopts the images already on disk
+        RenderCache reopened = new RenderCache(directory, 100);
+        assertEquals(2, reopened.size());
+        assertEquals(80, reopened.bytes());
+        assertNotNull(reopened.get("c.png"));
+    }
+
+    @Test
+    public void testRenderCache_keyDependsOnContentNotOnTheInstance() throws IOException {
+        WordGraph other = new WordGraph();
+        other.buildGraph(Main.readFileContent("./src/test.txt"));
+        CsrGraph graph = wordGraph.getGraph();
+        String key = RenderCache.key(graph, "all", new int[0], "png");
+        assertEquals(key, RenderCache.key(other.getGraph(), "all", new int[0], "png"));
+        assertNotEquals(key, RenderCache.key(graph, "top 300 1000", new int[0], "png"));
+        assertNotEquals(key, RenderCache.key(graph, "all", new int[] {0}, "png"));
+        assertNotEquals(key, RenderCache.key(graph, "all", new int[0], "svg"));
+        other.append("birds sing");
+        assertNotEquals(key, RenderCache.key(other.getGraph(), "all", new int[0], "png"));
+    }
+
+    @Test
+    public void testGraphRenderer_cacheKeyIsWorkedOutOnTheRenderThread() throws Exception {
+        Path directory = Files.createTempDirectory("render");
+        // Stands in for dot: copies the DOT source to the file after -o
+        Path dot = directory.resolve("fake-dot");
+        Files.write(dot, "#!/bin/sh\ncat > \"$3\"\n".getBytes(StandardCharsets.UTF_8));
+        Assume.assumeTrue(dot.toFile().setExecutable(true) && Files.isExecutable(Paths.get("/bin/sh")));
+        GraphRenderer renderer = new GraphRenderer(new GraphRenderer.Config().dotExecutable(dot.toString())
+                .outputDirectory(directory.resolve("pictures").toString()));
+        List<String> keyThreads = new CopyOnWriteArrayList<>();
+        GraphRenderer.Drawing drawing = new GraphRenderer.Drawing() {
+            @Override
+            public String cacheKey() {
+                keyThreads.add(Thread.currentThread().getName());
+                return "0123.png";
+            }
+
+            @Override
+            public void writeTo(Writer out) throws IOException {
+                out.write("digraph G {}");
+            }
+        };
+        try {
+            Path first = renderer.renderCached("first.png", "png", () -> drawing).get();
+            Path second = renderer.renderCached("second.png", "png", () -> drawing).get();
+            assertEquals("digraph G {}", new String(Files.readAllBytes(first), StandardCharsets.UTF_8));
+            assertEquals("digraph G {}", new String(Files.readAllBytes(second), StandardCharsets.UTF_8));
+            assertEquals(1, renderer.cache().hits());
+            assertEquals(Arrays.asList("graph-renderer", "graph-renderer"), keyThreads);
+        } finally {
+            renderer.close();
+        }
+    }
+
+    @Test
+    public void testSubgraph_selectionsKeepToTheirBudgets() {
+        SplittableRandom random = new SplittableRandom(9);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            // Skewed word choice, so that weights differ
+            text.append('w').append((int) Math.sqrt(random.nextInt(4_000_000))).append(' ');
+        }
+        WordGraph large = new WordGraph();
+        large.buildGraph(text.toString());
+        CsrGraph graph = large.getGraph();
+
+        Subgraph top = Subgraph.topEdges(graph, 40, 60);
+        assertWithinBudget(top, 40, 60);
+        assertTrue(top.truncated());
+        int heaviest = 0;
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            heaviest = Math.max(heaviest, graph.weight(e));
+        }
+        assertEquals(heaviest, graph.weight(top.edge(0)));
+
+        int center = graph.dictionary().idOf("w1000");
+        Subgraph neighbourhood = Subgraph.neighbourhood(graph, center, 2, 30, 45);
+        assertWithinBudget(neighbourhood, 30, 45);
+        assertEquals(center, neighbourhood.node(0));
+        // Every node is a neighbour of the center or of one of its neighbours
+        IntHashSet near = new IntHashSet();
+        near.add(center);
+        for (int node : undirectedNeighbours(graph, center)) {
+            near.add(node);
+            for (int next : undirectedNeighbours(graph, node)) {
+                near.add(next);
+            }
+        }
+        for (int i = 0; i < neighbourhood.nodeCount(); i++) {
+            assertTrue(near.contains(neighbourhood.node(i)));
+        }
+
+        // The longest of the shortest paths from the first word
+        ShortestPathTree tree = new ShortestPathTree(graph, 0);
+        int[] path = new int[0];
+        for (int target = 1; target < graph.nodeCount(); target++) {
+            int[] edges = tree.pathEdges(target, 1);
+            if (edges.length > path.length) {
+                path = edges;
+            }
+        }
+        assertTrue(path.length > 2);
+        Subgraph context = Subgraph.pathContext(graph, path, 25, 40);
+        assertWithinBudget(context, 25, 40);
+        for (int i = 0; i < path.length; i++) {
+            assertEquals(path[i], context.edge(i));
+        }
+        // A path longer than the budgets is drawn whole, with nothing around it
+        Subgraph tight = Subgraph.pathContext(graph, path, 1, 1);
+        assertWithinBudget(tight, path.length + 1, path.length);
+        assertEquals(path.length, tight.edgeCount());
+    }
+
+    @Test
+    public void testGraphviz_subgraphIsSelectedOnTheRenderThread() throws Exception {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        CsrGraph graph = wordGraph.getGraph();
+        Graphviz.showSubgraph(() -> {
+            threads.add(Thread.currentThread().getName());
+            return Subgraph.fitting(graph, 10, 10);
+        }, "selected.png").get();
+        assertEquals(Arrays.asList("graph-renderer"), threads);
+    }
+
+    // Nodes and edges within the budgets, no duplicates, and every edge between selected nodes
+    private static void assertWithinBudget(Subgraph subgraph, int maxNodes, int maxEdges) {
+        CsrGraph graph = subgraph.graph();
+        assertTrue(subgraph.nodeCount() + " nodes", subgraph.nodeCount() <= maxNodes);
+        assertTrue(subgraph.edgeCount() + " edges", subgraph.edgeCount() <= maxEdges);
+        IntHashSet nodes = new IntHashSet();
+        for (int i = 0; i < subgraph.nodeCount(); i++) {
+            assertTrue(nodes.add(subgraph.node(i)));
+        }
+        IntHashSet edges = new IntHashSet();
+        for (int i = 0; i < subgraph.edgeCount(); i++) {
+            int edge = subgraph.edge(i);
+            assertTrue(edges.add(edge));
+            assertTrue(nodes.contains(graph.source(edge)));
+            assertTrue(nodes.contains(graph.target(edge)));
+        }
+    }
+
+    private static int[] undirectedNeighbours(CsrGraph graph, int node) {
+        int[] neighbours = new int[graph.outDegree(node) + graph.inDegree(node)];
+        int count = 0;
+        for (int e = graph.outStart(node); e < graph.outEnd(node); e++) {
+            neighbours[count++] = graph.target(e);
+        }
+        for (int e = graph.inStart(node); e < graph.inEnd(node); e++) {
+            neighbours[count++] = graph.inSource(e);
+        }
+        return neighbours;
+    }
+
+    @Test
+    public void testGraphSnapshotFile_roundTripAnswersTheSameQueries() throws IOException {
+        Path snapshot = Files.createTempDirectory("snapshot").resolve("test.wgsnap");
+        wordGraph.saveSnapshot(snapshot.toString(), "./src/test.txt");
+        GraphSnapshotFile file = GraphSnapshotFile.load(snapshot);
+        assertTrue(file.verify());
+        assertTrue(file.source().matches(GraphSnapshotFile.Source.of(Paths.get("./src/test.txt"))));
+        WordGraph loaded = WordGraph.loadSnapshot(file);
+        assertEquals(describe(wordGraph.getGraph()), describe(loaded.getGraph()));
+        assertEquals(wordGraph.getGraph().version(), loaded.getGraph().version());
+        CsrGraph graph = wordGraph.getGraph();
+        for (int u = 0; u < graph.nodeCount(); u++) {
+            String word = graph.word(u);
+            assertEquals(u, loaded.getDictionary().idOf(word));
+            for (int v = 0; v < graph.nodeCount(); v += 3) {
+                String other = graph.word(v);
+                assertEquals(wordGraph.queryBridgeWords(word, other), loaded.queryBridgeWords(word, other));
+                assertEquals(wordGraph.calcShortestPath(word, other), loaded.calcShortestPath(word, other));
+            }
+        }
+        // Appends extend the mapped graph
+        loaded.append("birds sing with");
+        assertEquals("The bridge words from birds to with are:sing", loaded.queryBridgeWords("birds", "with"));
+    }
+
+    @Test
+    public void testGraphSnapshotFile_damagedFilesAreRejectedOrFailVerification() throws IOException {
+        Path directory = Files.createTempDirectory("snapshot");
+        Path snapshot = directory.resolve("test.wgsnap");
+        wordGraph.saveSnapshot(snapshot.toString(), "./src/test.txt");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        int nodeCount = wordGraph.getGraph().nodeCount();
+
+        Path truncated = directory.resolve("truncated.wgsnap");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 8));
+        assertLoadFails(truncated);
+
+        // The first word offset is not 0
+        byte[] badWordOffsets = bytes.clone();
+        badWordOffsets[GraphSnapshotFile.HEADER_BYTES] = 1;
+        Path wordOffsets = directory.resolve("word-offsets.wgsnap");
+        Files.write(wordOffsets, badWordOffsets);
+        assertLoadFails(wordOffsets);
+
+        // The last edge offset sits at the end of the offsets section, just before the targets
+        int edgeCount = wordGraph.getGraph().edgeCount();
+        int targetsAt = bytes.length - 2 * (((4 * edgeCount) + 7) & ~7);
+        int lastOffsetAt = targetsAt - (((4 * (nodeCount + 1)) + 7) & ~7) + 4 * nodeCount;
+        byte[] badOffsets = bytes.clone();
+        badOffsets[lastOffsetAt]++;
+        Path offsets = directory.resolve("offsets.wgsnap");
+        Files.write(offsets, badOffsets);
+        assertLoadFails(offsets);
+
+        // A damaged target passes the structural checks; only the checksum catches it
+        byte[] badTarget = bytes.clone();
+        badTarget[targetsAt] ^= 1;
+        Path target = directory.resolve("target.wgsnap");
+        Files.write(target, badTarget);
+        assertFalse(GraphSnapshotFile.load(target).verify());
+    }
+
+    private static void assertLoadFails(Path snapshot) {
+        try {
+            GraphSnapshotFile.load(snapshot);
+            fail("loaded " + snapshot);
+        } catch (IOException expected) {
+            // rejected
+        }
+    }
+
+    @Test
+    public void testMain_loadGraphRebuildsWhenTheCorpusChanges() throws IOException {
+        Path directory = Files.createTempDirectory("corpus");
+        Path corpus = directory.resolve("corpus.txt");
+        String snapshot = corpus + ".wgsnap";
+        Files.write(corpus, "alpha beta gamma".getBytes(StandardCharsets.UTF_8));
+        FileTime modified = Files.getLastModifiedTime(corpus);
+        WordGraph built = Main.loadGraph(corpus.toString(), snapshot);
+        assertTrue(built.canReach("alpha", "gamma"));
+        assertTrue(Files.exists(Paths.get(snapshot)));
+
+        // Same size and time stamp: the snapshot is trusted, so the old words are still there
+        Files.write(corpus, "delta beta gamma".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(corpus, modified);
+        WordGraph mapped = Main.loadGraph(corpus.toString(), snapshot);
+        assertTrue(mapped.canReach("alpha", "gamma"));
+        assertFalse(mapped.canReach("delta", "gamma"));
+
+        // A changed corpus is built again and the snapshot replaced
+        Files.write(corpus, "delta beta gamma epsilon".getBytes(StandardCharsets.UTF_8));
+        WordGraph rebuilt = Main.loadGraph(corpus.toString(), snapshot);
+        assertTrue(rebuilt.canReach("delta", "epsilon"));
+        assertFalse(rebuilt.canReach("alpha", "gamma"));
+        assertTrue(GraphSnapshotFile.load(Paths.get(snapshot)).source().matches(GraphSnapshotFile.Source.of(corpus)));
+    }
+
+    @Test
+    public void testCalcShortestPath_repeatedSourceGetsACachedTree() {
+        ShortestPathTreeCache trees = wordGraph.getShortestPathTreeCache();
+        wordGraph.calcShortestPath("birds", "feathers");
+        assertEquals(0, trees.size());
+        wordGraph.calcShortestPath("birds", "with");
+        assertEquals(1, trees.size());
+        // Every other reachable word is answered from the cached tree
+        CsrGraph graph = wordGraph.getGraph();
+        long hits = trees.hits();
+        int targets = 0;
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            String word = graph.word(node);
+            if (!word.equals("feathers") && !word.equals("with") && wordGraph.canReach("birds", word)) {
+                assertTrue(wordGraph.calcShortestPath("birds", word).startsWith("The shortest path(s) from birds to " + word));
+                targets++;
+            }
+        }
+        assertTrue(targets > 5);
+        assertEquals(1, trees.size());
+        assertEquals(hits + targets, trees.hits());
+    }
+
+    @Test
+    public void testGraphviz_shortestPathPictureReusesTheTreeThatAnsweredTheQuery() throws Exception {
+        CsrGraph graph = wordGraph.getGraph();
+        ShortestPathTree tree = wordGraph.shortestPathTree("birds");
+        String answer = wordGraph.calcShortestPath("birds", "feathers");
+        assertEquals("The shortest path(s) from birds to feathers with length 2 are:\nbirds -> with -> feathers\n", answer);
+        int settled = tree.settledCount();
+        Graphviz.generateGraphWithShortestPath(graph, tree, "feathers", "birds_to_feathers.png", "png").get();
+        assertEquals(settled, tree.settledCount());
+        assertEquals(1, wordGraph.getShortestPathTreeCache().size());
+        assertEquals(1, wordGraph.getShortestPathTreeCache().hits());
+    }
+
+    @Test
+    public void testAppend_blankTextChangesNothing() {
+        long version = wordGraph.getGraph().version();
+        String before = describe(wordGraph.getGraph());
+        assertEquals(version, wordGraph.append(""));
+        assertEquals(version, wordGraph.append("   \n\t "));
+        assertEquals(version, wordGraph.append(" , ... !? 42 "));
+        assertEquals(before, describe(wordGraph.getGraph()));
+        assertEquals(0, wordGraph.getUpdateStats().getAppendCount());
+        WordGraph blank = new WordGraph();
+        blank.buildGraph("   ");
+        assertEquals(0, blank.getGraph().nodeCount());
+    }
+
+    @Test
+    public void testAppend_splitsRawTextLikeACorpusFile() throws IOException {
+        WordGraph appended = new WordGraph();
+        appended.append(" Hello, World");
+        assertEquals(-1, appended.getDictionary().idOf(""));
+        assertEquals(-1, appended.getDictionary().idOf("hello,"));
+        assertEquals(Collections.singletonMap("hello -> world", 1), appended.getEdgeWeights());
+
+        String text = "The quick, brown fox!\nJumps over the LAZY dog's tail -- and\tthe fox's den.\n";
+        WordGraph fromText = new WordGraph();
+        fromText.append(text);
+        Path corpus = Files.createTempFile("corpus", ".txt");
+        try {
+            Files.write(corpus, text.getBytes(StandardCharsets.UTF_8));
+            WordGraph fromFile = new WordGraph();
+            fromFile.buildGraphFromFile(corpus.toString());
+            assertEquals(describe(fromFile.getGraph()), describe(fromText.getGraph()));
+        } finally {
+            Files.delete(corpus);
+        }
+    }
+
+    // Random text over a small vocabulary of letter words, so that equal-length paths are common
+    private static String randomWords(SplittableRandom random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append('w').append((char) ('a' + random.nextInt(8))).append((char) ('a' + random.nextInt(8))).append(' ');
+        }
+        return text.toString();
+    }
+
+    private static int node(CsrGraph graph, String word) {
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            if (graph.word(v).equals(word)) {
+                return v;
+            }
+        }
+        return -1;
+    }
+
+    // Every pair of the snapshot gets the distance and the tied paths of plain Dijkstra, in its order
+    private static void assertOracleMatchesDijkstra(LandmarkOracle oracle) {
+        CsrGraph g = oracle.graph();
+        int n = g.nodeCount();
+        for (int source = 0; source < n; source++) {
+            ShortestPathTree tree = new ShortestPathTree(g, source);
+            for (int target = 0; target < n; target++) {
+                String pair = g.word(source) + " -> " + g.word(target) + " at version " + g.version();
+                LandmarkOracle.Search search = oracle.search(source, target, ShortestPathTree.MAX_PATHS);
+                int expected = tree.distance(target);
+                assertEquals(pair, expected < 0 ? -1 : expected, search.distance());
+                assertEquals(pair, search.distance(), oracle.distance(source, target));
+                List<String> paths = new ArrayList<>();
+                for (int[] path : search.paths()) {
+                    paths.add(Arrays.toString(path));
+                }
+                List<String> expectedPaths = new ArrayList<>();
+                if (expected >= 0) {
+                    for (int[] path : tree.paths(target, ShortestPathTree.MAX_PATHS)) {
+                        expectedPaths.add(Arrays.toString(path));
+                    }
+                }
+                assertEquals(pair, expectedPaths, paths);
+            }
+        }
+    }
+
+    @Test
+    public void testLandmarkOracle_randomGraphsGiveDijkstraDistancesAndTies() {
+        SplittableRandom random = new SplittableRandom(21);
+        for (int round = 0; round < 5; round++) {
+            WordGraph graph = new WordGraph();
+            graph.append(randomWords(random, 150 + random.nextInt(300)));
+            // Unreachable pairs are asked of the oracle directly, not screened by reachability
+            assertOracleMatchesDijkstra(LandmarkOracle.build(graph.getGraph(), 1 + random.nextInt(6)));
+        }
+    }
+
+    @Test
+    public void testLandmarkOracle_rebuildAfterAppendStaysExact() {
+        SplittableRandom random = new SplittableRandom(22);
+        WordGraph graph = new WordGraph();
+        graph.setLandmarkCount(4);
+        graph.append(randomWords(random, 200));
+        LandmarkOracle first = graph.landmarkOracle(graph.getGraph());
+        assertOracleMatchesDijkstra(first);
+        // Only words already in the graph, so that the landmarks survive; new edges shorten paths
+        String words = randomWords(random, 100);
+        StringBuilder known = new StringBuilder();
+        for (String word : words.split(" ")) {
+            if (node(first.graph(), word) >= 0) {
+                known.append(word).append(' ');
+            }
+        }
+        graph.append(known.toString());
+        CsrGraph next = graph.getGraph();
+        assertTrue(next.version() > first.graph().version());
+        LandmarkOracle rebuilt = graph.landmarkOracle(next);
+        assertSame(next, rebuilt.graph());
+        assertEquals(first.landmarkCount(), rebuilt.landmarkCount());
+        for (int i = 0; i < first.landmarkCount(); i++) {
+            assertEquals(first.landmark(i), rebuilt.landmark(i));
+        }
+        assertOracleMatchesDijkstra(rebuilt);
+        assertSame(rebuilt, graph.landmarkOracle(next));
+    }
+
+    @Test
+    public void testLandmarkOracle_reportsSettledNodesAgainstDijkstra() {
+        LandmarkOracle oracle = LandmarkOracle.build(wordGraph.getGraph(), 2);
+        CsrGraph g = oracle.graph();
+        assertFalse(oracle.toString().contains("dijkstra"));
+        int source = node(g, "birds");
+        int target = node(g, "feathers");
+        LandmarkOracle.Search search = oracle.search(source, target, ShortestPathTree.MAX_PATHS);
+        int dijkstra = oracle.compareWithDijkstra(source, target, search);
+        assertEquals(LandmarkOracle.dijkstraSettledCount(g, source, target), dijkstra);
+        assertEquals(dijkstra, oracle.averageDijkstraSettled(), 0);
+        assertTrue(oracle.toString(), oracle.toString().endsWith(String.format(
+                " compared=1 settled(avg)=%.1f dijkstra(avg)=%.1f", (double) search.settledCount(), (double) dijkstra)));
+    }
+
+    private static String runBatch(BatchQueryRunner runner, String input, long seed) throws IOException {
+        StringWriter out = new StringWriter();
+        runner.run(new BufferedReader(new StringReader(input)), out, seed);
+        return out.toString();
+    }
+
+    @Test
+    public void testBatchQueryRunner_keepsInputOrderAcrossChunks() throws IOException {
+        // Two full chunks and part of a third, malformed lines between well-formed ones
+        int lines = 2 * BatchQueryRunner.CHUNK_LINES + 10;
+        StringBuilder input = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            String line;
+            switch (i % 4) {
+                case 0:
+                    line = "Birds  with";
+                    expected.add(wordGraph.queryBridgeWords("birds", "with"));
+                    break;
+                case 1:
+                    line = "q" + i;
+                    expected.add("Expected two words: " + line);
+                    break;
+                case 2:
+                    line = "a b c" + i;
+                    expected.add("Expected two words: " + line);
+                    break;
+                default:
+                    line = i % 8 == 3 ? "" : "birds feathers";
+                    expected.add(line.isEmpty() ? "Expected two words: " : wordGraph.queryBridgeWords("birds", "feathers"));
+            }
+            input.append(line).append('\n');
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BatchQueryRunner runner = new BatchQueryRunner(wordGraph, "bridge", pool, null);
+            String output = runBatch(runner, input.toString(), 1);
+            assertEquals(expected, Arrays.asList(output.split(System.lineSeparator(), -1)).subList(0, lines));
+            assertTrue(output.endsWith(System.lineSeparator()));
+            assertEquals(lines, runner.queryCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchQueryRunner_failedQueryGetsAnErrorLineAndTheBatchGoesOn() throws IOException {
+        BatchQueryRunner runner = new BatchQueryRunner(wordGraph, "path", ForkJoinPool.commonPool(), null) {
+            @Override
+            String answer(String line, SplittableRandom random) {
+                if (line.startsWith("boom")) {
+                    throw new IllegalStateException("broken\nquery");
+                }
+                return super.answer(line, random);
+            }
+        };
+        String output = runBatch(runner, "birds feathers\nboom now\nair birds\n", 1);
+        String[] lines = output.split(System.lineSeparator());
+        assertEquals(3, lines.length);
+        assertEquals("The shortest path(s) from birds to feathers with length 2 are: | birds -> with -> feathers", lines[0]);
+        assertEquals("Query failed (java.lang.IllegalStateException: broken query): boom now", lines[1]);
+        assertEquals("No shortest path from air to birds!", lines[2]);
+    }
+
+    @Test
+    public void testBatchQueryRunner_textModeIsReproducibleForASeed() throws IOException {
+        // Three bridge words between each pair, so that every line depends on its generator
+        WordGraph graph = new WordGraph();
+        graph.append("north one south north two south north three south east one west east two west east three west");
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < BatchQueryRunner.CHUNK_LINES + 100; i++) {
+            input.append(i % 2 == 0 ? "north south and east west" : "east west").append('\n');
+        }
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        try {
+            String first = runBatch(new BatchQueryRunner(graph, "text", one, null), input.toString(), 7);
+            String second = runBatch(new BatchQueryRunner(graph, "text", four, null), input.toString(), 7);
+            assertEquals(first, second);
+            assertEquals(BatchQueryRunner.CHUNK_LINES + 100, first.split(System.lineSeparator()).length);
+            assertNotEquals(first, runBatch(new BatchQueryRunner(graph, "text", four, null), input.toString(), 8));
+        } finally {
+            one.shutdown();
+            four.shutdown();
+        }
+    }
+
+    @Test
+    public void testRandomWalkEngine_picksSuccessorsInProportionToBigramCounts() {
+        // "hub" is followed by wb once, wc twice, ... wk ten times
+        StringBuilder text = new StringBuilder();
+        for (int k = 1; k <= 10; k++) {
+            for (int i = 0; i < k; i++) {
+                text.append("hub w").append((char) ('a' + k)).append(' ');
+            }
+        }
+        WordGraph graph = new WordGraph();
+        graph.append(text.toString());
+        CsrGraph g = graph.getGraph();
+        RandomWalkEngine engine = new RandomWalkEngine(g);
+        int hub = node(g, "hub");
+        int[] picked = new int[g.edgeCount()];
+        SplittableRandom random = new SplittableRandom(9);
+        int draws = 550_000;
+        for (int i = 0; i < draws; i++) {
+            picked[engine.nextEdge(hub, random)]++;
+        }
+        assertEquals(10, g.outDegree(hub));
+        for (int e = g.outStart(hub); e < g.outEnd(hub); e++) {
+            int k = g.word(g.target(e)).charAt(1) - 'a';
+            assertEquals(k, g.weight(e));
+            assertEquals(g.word(g.target(e)), k / 55.0, (double) picked[e] / draws, 0.003);
+        }
+        // A single successor is always picked
+        int wb = node(g, "wb");
+        assertEquals(g.outStart(wb), engine.nextEdge(wb, random));
+    }
+
+    @Test
+    public void testRandomWalkEngine_walkStopsAtADeadEndOrARepeatedEdge() {
+        // a b twice, then on to c (back to a) or to the dead end d
+        WordGraph graph = new WordGraph();
+        graph.append("a b c a b d");
+        CsrGraph g = graph.getGraph();
+        RandomWalkEngine engine = new RandomWalkEngine(g);
+        String bigrams = describe(g);
+        IntHashSet scratch = new IntHashSet();
+        int deadEnds = 0;
+        int repeats = 0;
+        for (int seed = 0; seed < 500; seed++) {
+            String[] words = engine.walk(new SplittableRandom(seed), scratch).split(" ");
+            List<String> steps = new ArrayList<>();
+            for (int i = 1; i < words.length; i++) {
+                String step = words[i - 1] + " -> " + words[i];
+                assertTrue(step, bigrams.contains(step));
+                steps.add(step);
+            }
+            String lastStep = steps.isEmpty() ? null : steps.get(steps.size() - 1);
+            List<String> before = steps.isEmpty() ? steps : steps.subList(0, steps.size() - 1);
+            assertEquals("no repeated edge before the end of " + steps, before.size(), new TreeSet<>(before).size());
+            if (words[words.length - 1].equals("d")) {
+                deadEnds++;
+                assertFalse("walk stops at the dead end: " + steps, before.contains(lastStep));
+            } else {
+                repeats++;
+                assertTrue("walk stops on a repeated edge: " + steps, before.contains(lastStep));
+            }
+        }
+        assertTrue(deadEnds > 0);
+        assertTrue(repeats > 0);
+    }
+
+    @Test
+    public void testRandomWalkEngine_walksAreTheSameForASeedAtAnyParallelism() {
+        long count = 3L * RandomWalkEngine.WALKS_PER_TASK + 17;
+        List<String> expected = null;
+        for (int threads : new int[]{1, 2, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                List<String> walks = new CopyOnWriteArrayList<>();
+                wordGraph.randomWalks(count, 42, pool, walks::add);
+                List<String> sorted = new ArrayList<>(walks);
+                Collections.sort(sorted);
+                assertEquals(count, sorted.size());
+                if (expected == null) {
+                    expected = sorted;
+                } else {
+                    assertEquals("walks on " + threads + " threads", expected, sorted);
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+        List<String> other = new CopyOnWriteArrayList<>();
+        wordGraph.randomWalks(count, 43, ForkJoinPool.commonPool(), other::add);
+        Collections.sort(other);
+        assertNotEquals(expected, other);
+    }
+
+    @Test
+    public void testRandomWalk_emptyGraphGivesAnEmptyWalk() {
+        WordGraph empty = new WordGraph();
+        assertEquals("", empty.randomWalk(new SplittableRandom(1)));
+        List<String> walks = new CopyOnWriteArrayList<>();
+        empty.randomWalks(3, 1, ForkJoinPool.commonPool(), walks::add);
+        assertEquals(Arrays.asList("", "", ""), walks);
+    }
+
+    @Test
+    public void testGenerateNewText_fixedSeedGivesTheSameSentence() {
+        // north -> south and east -> west each have the bridge words one, two and three
+        WordGraph graph = new WordGraph();
+        graph.append("north one south north two south north three south east one west east two west east three west");
+        String sentence = "north south east west and north south";
+        String expected = graph.generateNewText(sentence, new SplittableRandom(11));
+        assertEquals("north one south east two west and north one south", expected);
+        assertEquals(expected, graph.generateNewText(sentence, new SplittableRandom(11)));
+        TreeSet<String> sentences = new TreeSet<>();
+        for (int seed = 0; seed < 50; seed++) {
+            sentences.add(graph.generateNewText(sentence, new SplittableRandom(seed)));
+        }
+        assertTrue(sentences.toString(), sentences.size() > 1);
+        // A pair with a single bridge word does not depend on the generator
+        assertEquals("birds with feathers", wordGraph.generateNewText("birds feathers", new SplittableRandom(1)));
+        assertEquals("birds with feathers", wordGraph.generateNewText("birds feathers", new SplittableRandom(2)));
+    }
+
+    @Test
+    public void testGenerateNewText_unknownAndCapitalisedWordsPassThrough() {
+        SplittableRandom random = new SplittableRandom(3);
+        // The graph holds lowercase words only, so "Birds" gets no bridge word and keeps its case
+        assertEquals("Birds feathers", wordGraph.generateNewText("Birds feathers", random));
+        assertEquals("birds hahaha feathers", wordGraph.generateNewText("birds hahaha feathers", random));
+        // Words with punctuation attached are not in the graph either
+        assertEquals("Hello, world! birds feathers.", wordGraph.generateNewText("Hello, world! birds feathers.", random));
+        assertEquals("birds with feathers", wordGraph.generateNewText("birds   feathers  ", random));
+        assertEquals("", wordGraph.generateNewText("", random));
+    }
+
+    @Test
+    public void testShortestPathBatch_handsOutTreesInCompletionOrder() throws InterruptedException {
+        CsrGraph g = wordGraph.getGraph();
+        int slow = node(g, "birds");
+        int fast = node(g, "forest");
+        CountDownLatch release = new CountDownLatch(1);
+        // The slow source cannot finish until the fast one has been handed out
+        ShortestPathTreeCache cache = new ShortestPathTreeCache(1 << 20) {
+            @Override
+            public ShortestPathTree get(CsrGraph graph, int source) {
+                if (source == slow) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.get(graph, source);
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Iterator<ShortestPathTree> trees = new ShortestPathBatch(cache).computeAll(g, new int[]{slow, fast}, pool);
+            assertTrue(trees.hasNext());
+            ShortestPathTree first = trees.next();
+            assertEquals(fast, first.source());
+            release.countDown();
+            assertTrue(trees.hasNext());
+            ShortestPathTree second = trees.next();
+            assertEquals(slow, second.source());
+            assertFalse(trees.hasNext());
+            // Both trees are complete and cached
+            for (ShortestPathTree tree : Arrays.asList(first, second)) {
+                assertSame(tree, cache.getIfPresent(g, tree.source()));
+                int settled = tree.settledCount();
+                tree.settleAll();
+                assertEquals(settled, tree.settledCount());
+            }
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testShortestPathTreeCache_evictsLeastRecentlyUsedBeyondItsBytes() {
+        CsrGraph g = wordGraph.getGraph();
+        ShortestPathTree[] trees = new ShortestPathTree[3];
+        for (int i = 0; i < trees.length; i++) {
+            trees[i] = new ShortestPathTree(g, i);
+            trees[i].settleAll();
+        }
+        // Room for the first two trees, not for all three
+        ShortestPathTreeCache cache = new ShortestPathTreeCache(trees[0].estimatedBytes() + trees[1].estimatedBytes());
+        cache.put(trees[0]);
+        cache.put(trees[1]);
+        assertEquals(2, cache.size());
+        assertEquals(trees[0].estimatedBytes() + trees[1].estimatedBytes(), cache.bytes());
+        // Using tree 0 makes tree 1 the least recently used
+        assertSame(trees[0], cache.getIfPresent(g, 0));
+        cache.put(trees[2]);
+        assertSame(trees[0], cache.getIfPresent(g, 0));
+        assertSame(trees[2], cache.getIfPresent(g, 2));
+        assertNull(cache.getIfPresent(g, 1));
+        assertTrue(cache.bytes() <= trees[0].estimatedBytes() + trees[1].estimatedBytes());
+        assertEquals(trees[0].estimatedBytes() + trees[2].estimatedBytes(), cache.bytes());
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+        // A tree over the whole budget is still kept, on its own
+        ShortestPathTreeCache tiny = new ShortestPathTreeCache(1);
+        tiny.put(trees[0]);
+        tiny.put(trees[1]);
+        assertEquals(1, tiny.size());
+        assertSame(trees[1], tiny.getIfPresent(g, 1));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test
+    public void testShortestPathTreeCache_keysTreesByGraphVersion() throws IOException {
+        ShortestPathTreeCache cache = new ShortestPathTreeCache(1 << 20);
+        CsrGraph before = wordGraph.getGraph();
+        int source = node(before, "birds");
+        ShortestPathTree old = cache.get(before, source);
+        assertSame(old, cache.get(before, source));
+        wordGraph.append("birds sing");
+        CsrGraph after = wordGraph.getGraph();
+        assertTrue(after.version() > before.version());
+        // Same source, newer version: a new tree, and the old version's trees are dropped
+        assertNull(cache.getIfPresent(after, source));
+        ShortestPathTree current = cache.get(after, source);
+        assertNotSame(old, current);
+        assertSame(after, current.graph());
+        assertEquals(1, cache.size());
+        assertNull(cache.getIfPresent(before, source));
+        // Another graph that happens to have the same version gets none of these trees
+        WordGraph other = new WordGraph();
+        other.buildGraph(Main.readFileContent("./src/test.txt"));
+        other.getGraph();
+        other.append("birds sing");
+        assertEquals(after.version(), other.getGraph().version());
+        assertNull(cache.getIfPresent(other.getGraph(), source));
+    }
+
+    @Test
+    public void testQueryServer_closeEndsIdleConnectionsAtOnce() throws Exception {
+        QueryServer server = startServer(4);
+        try (Socket idle = new Socket(InetAddress.getLoopbackAddress(), server.port());
+             Socket waiting = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            BufferedReader idleIn = new BufferedReader(new InputStreamReader(idle.getInputStream(), StandardCharsets.UTF_8));
+            Writer idleOut = new OutputStreamWriter(idle.getOutputStream(), StandardCharsets.UTF_8);
+            idleOut.write("ping\n");
+            idleOut.flush();
+            assertEquals("{\"ok\":true,\"result\":\"pong\"}", idleIn.readLine());
+            // A request read before close still gets its response
+            Writer waitingOut = new OutputStreamWriter(waiting.getOutputStream(), StandardCharsets.UTF_8);
+            waitingOut.write("bridge birds feathers\n");
+            waitingOut.flush();
+            while (server.requestsRead() < 2) {
+                Thread.sleep(10);
+            }
+            long start = System.nanoTime();
+            server.close();
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("close took " + millis + " ms", millis < 5_000);
+            assertNull(idleIn.readLine());
+            BufferedReader waitingIn = new BufferedReader(new InputStreamReader(waiting.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals(server.answer("bridge birds feathers"), waitingIn.readLine());
+            assertNull(waitingIn.readLine());
+            try (Socket late = new Socket()) {
+                late.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.port()), 1000);
+                fail("still accepting connections");
+            } catch (IOException e) {
+                // Refused
+            }
+        } finally {
+            server.close();
+        }
+    }
+}